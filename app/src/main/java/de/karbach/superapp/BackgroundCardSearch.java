@@ -0,0 +1,246 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.karbach.superapp.data.Card;
+import de.karbach.superapp.data.CardQuery;
+
+/**
+ * Filters cards on a worker thread. Each new search cancels the running one.
+ * Searches can be delayed (debounced), so that typing does not start a search
+ * for every key. Results are published in chunks on the UI thread, so that the
+ * list fills while the rest of the cards is still filtered.
+ *
+ * If the new query refines the last completed one (see CardQuery.isRefinementOf),
+ * only the cards of the last result are filtered again.
+ */
+public class BackgroundCardSearch {
+
+    /**
+     * Delay in ms for searches started while typing
+     */
+    public static final long DEBOUNCEMILLIS = 250;
+
+    /**
+     * Number of cards checked before a partial result is published
+     */
+    public static final int CHUNKSIZE = 500;
+
+    /**
+     * Receives the results on the UI thread
+     */
+    public interface ResultListener{
+        /**
+         * Called for every chunk of results
+         * @param search the search string
+         * @param found cards found in this chunk, in order of the searched cards
+         * @param first if true, this is the first chunk and previous results must be removed
+         * @param finished if true, the search is complete
+         */
+        void onSearchResults(String search, List<Card> found, boolean first, boolean finished);
+    }
+
+    /**
+     * Posts results and delayed searches to the UI thread
+     */
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Runs the filtering, one search at a time
+     */
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Incremented with each new search. A search stops, as soon as it is no longer the current generation.
+     */
+    private AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Search waiting for its debounce delay
+     */
+    private Runnable pendingSearch;
+
+    /**
+     * Last completely executed query and its result, used for refining searches
+     */
+    private CardQuery lastQuery;
+    private List<Card> lastResult;
+
+    /**
+     * True while a search is scheduled or running
+     */
+    private boolean running = false;
+
+    private ResultListener listener;
+
+    /**
+     * @param listener receives the results on the UI thread
+     */
+    public BackgroundCardSearch(ResultListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Start a new search and cancel the current one. Call from the UI thread.
+     * @param search the search string, compiled as CardQuery, if it uses the query syntax (see CardQuery.isQuery)
+     * @param cards all cards to search in, they are copied before the search starts
+     * @param delay delay in ms before the search starts, e.g. DEBOUNCEMILLIS
+     */
+    public void search(final String search, List<Card> cards, long delay){
+        final int myGeneration = generation.incrementAndGet();
+        if(pendingSearch != null){
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+
+        //Simple text is searched like before, only query syntax is compiled
+        final CardQuery query = CardQuery.isQuery(search) ? CardQuery.parse(search) : null;
+        final List<Card> source;
+        if(query != null && lastResult != null && query.isRefinementOf(lastQuery)){
+            source = lastResult;
+        }
+        else{
+            source = new ArrayList<Card>(cards);
+        }
+
+        running = true;
+        pendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                pendingSearch = null;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        filter(search, query, source, myGeneration);
+                    }
+                });
+            }
+        };
+        if(delay > 0){
+            mainHandler.postDelayed(pendingSearch, delay);
+        }
+        else{
+            pendingSearch.run();
+        }
+    }
+
+    /**
+     * Filter the cards on the worker thread and publish the results in chunks.
+     * @param search the search string
+     * @param query compiled query, null if search is simple text or no valid query
+     * @param source the cards to filter
+     * @param myGeneration generation of this search
+     */
+    private void filter(final String search, final CardQuery query, List<Card> source, final int myGeneration){
+        String simpleSearch = Card.toSimpleString(search);
+        final List<Card> all = new ArrayList<Card>();
+        List<Card> chunk = new ArrayList<Card>();
+        boolean first = true;
+        int size = source.size();
+        for(int i=0; i<size; i++){
+            Card card = source.get(i);
+            boolean matches;
+            if(query != null){
+                matches = query.matches(card);
+            }
+            else{
+                matches = card != null && card.matchesSearch(simpleSearch);
+            }
+            if(matches){
+                chunk.add(card);
+            }
+            if((i+1) % CHUNKSIZE == 0 && i+1 < size){
+                if(generation.get() != myGeneration){
+                    return;
+                }
+                all.addAll(chunk);
+                publish(search, chunk, first, false, myGeneration, null, null);
+                chunk = new ArrayList<Card>();
+                first = false;
+            }
+        }
+        all.addAll(chunk);
+        publish(search, chunk, first, true, myGeneration, query, all);
+    }
+
+    /**
+     * Hand results over to the UI thread, if the search was not cancelled in between.
+     */
+    private void publish(final String search, final List<Card> found, final boolean first, final boolean finished,
+                         final int myGeneration, final CardQuery query, final List<Card> all){
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(generation.get() != myGeneration){
+                    return;
+                }
+                if(finished){
+                    running = false;
+                    lastQuery = query;
+                    lastResult = query == null ? null : all;
+                }
+                listener.onSearchResults(search, found, first, finished);
+            }
+        });
+    }
+
+    /**
+     * @return true, if a search is scheduled or running
+     */
+    public boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * Cancel the scheduled or running search. No more results are published for it.
+     */
+    public void cancel(){
+        generation.incrementAndGet();
+        if(pendingSearch != null){
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        running = false;
+    }
+
+    /**
+     * Forget the last result, call this whenever the searched cards changed.
+     */
+    public void invalidate(){
+        lastQuery = null;
+        lastResult = null;
+    }
+
+    /**
+     * Cancel all searches and stop the worker thread
+     */
+    public void shutdown(){
+        cancel();
+        executor.shutdownNow();
+    }
+}
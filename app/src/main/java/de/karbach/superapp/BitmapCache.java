@@ -0,0 +1,180 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+/**
+ * Process wide cache for bitmaps decoded from resources.
+ * Bitmaps are cached per resource and target size. They are decoded with a
+ * sample size, so that they are not much larger than the size they are drawn with.
+ * The cache is limited to a fraction of the available heap and is released,
+ * when the system asks the app to trim its memory.
+ */
+public class BitmapCache implements ComponentCallbacks2 {
+
+    /**
+     * The cache may use 1/MEMORYFRACTION of the maximum heap
+     */
+    private static final int MEMORYFRACTION = 8;
+
+    /**
+     * Singleton instance
+     */
+    private static BitmapCache instance;
+
+    /**
+     * Decoded bitmaps by key, size is measured in KB
+     */
+    private LruCache<String, Bitmap> cache;
+
+    private BitmapCache(){
+        int budget = (int) (Runtime.getRuntime().maxMemory() / 1024 / MEMORYFRACTION);
+        cache = new LruCache<String, Bitmap>(budget){
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return Math.max(1, value.getByteCount() / 1024);
+            }
+        };
+    }
+
+    /**
+     * Get the singleton instance. On first call the cache registers itself
+     * for memory trim callbacks of the app.
+     * @param context any context of the app
+     * @return singleton instance
+     */
+    public static synchronized BitmapCache getInstance(Context context){
+        if(instance != null){
+            return instance;
+        }
+        instance = new BitmapCache();
+        Context appContext = context.getApplicationContext();
+        if(appContext != null) {
+            appContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Find the largest power of two sample size, for which the decoded bitmap is still
+     * at least as large as the target size.
+     * @param width width of the bitmap in the resource
+     * @param height height of the bitmap in the resource
+     * @param targetWidth minimum width needed, 0 or less if not relevant
+     * @param targetHeight minimum height needed, 0 or less if not relevant
+     * @return sample size for BitmapFactory.Options.inSampleSize, at least 1
+     */
+    public static int calculateSampleSize(int width, int height, int targetWidth, int targetHeight){
+        int sampleSize = 1;
+        if(width <= 0 || height <= 0 || (targetWidth <= 0 && targetHeight <= 0)){
+            return sampleSize;
+        }
+        while(width/(sampleSize*2) >= targetWidth && height/(sampleSize*2) >= targetHeight){
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Get a bitmap for a resource, which can be drawn with the target size.
+     * The returned bitmap might be larger than the target size, but it is not downscaled
+     * below it. Do not modify or recycle the returned bitmap, it is shared.
+     * @param res resources to decode from
+     * @param resource drawable resource id
+     * @param targetWidth width the bitmap is drawn with, 0 or less if only the height is relevant
+     * @param targetHeight height the bitmap is drawn with, 0 or less if only the width is relevant
+     * @return the cached or newly decoded bitmap, null if it could not be decoded
+     */
+    public Bitmap getBitmap(Resources res, int resource, int targetWidth, int targetHeight){
+        String key = resource+":"+Math.max(0, targetWidth)+"x"+Math.max(0, targetHeight);
+        Bitmap result = cache.get(key);
+        if(result != null){
+            return result;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, resource, options);
+
+        options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        result = BitmapFactory.decodeResource(res, resource, options);
+        if(result == null){
+            return null;
+        }
+
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Get a bitmap rendered by the app and stored with put.
+     * @param key key of the bitmap, must not start with a digit
+     * @return the cached bitmap or null, if it is not cached (anymore)
+     */
+    public Bitmap get(String key){
+        return cache.get(key);
+    }
+
+    /**
+     * Store a bitmap rendered by the app, e.g. a composition of several resources.
+     * Keys for decoded resources start with the resource id, so use keys starting with a letter.
+     * The bitmap must not be modified afterwards, it is shared.
+     * @param key key of the bitmap, must not start with a digit
+     * @param bitmap the bitmap to cache
+     */
+    public void put(String key, Bitmap bitmap){
+        if(key != null && bitmap != null) {
+            cache.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Remove all bitmaps from the cache
+     */
+    public void clear(){
+        cache.evictAll();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if(level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL){
+            clear();
+        }
+        else if(level >= TRIM_MEMORY_RUNNING_LOW){
+            cache.trimToSize(cache.maxSize()/2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -24,6 +24,10 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.view.GestureDetectorCompat;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.LayoutInflater;
@@ -33,7 +37,6 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.LinearLayout;
 import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -46,6 +49,7 @@ import java.util.Map;
 import de.karbach.superapp.data.Card;
 import de.karbach.superapp.data.Dictionary;
 import de.karbach.superapp.data.DictionaryManagement;
+import de.karbach.superapp.data.SessionOrder;
 
 /**
  * Created by Carsten on 29.12.2015.
@@ -75,6 +79,17 @@ public class BoxFragment extends Fragment{
      * @param askForLanguage2 if true, show base language (e.g. German) and ask for the other(e.g. English). If false ask for the base language
      */
     public void startBoxTraining(int box, boolean realTest, boolean askForLanguage2){
+        startBoxTraining(box, realTest, askForLanguage2, false);
+    }
+
+    /**
+     * Init training for a given box. Start TestActivity.
+     * @param box the box to train in
+     * @param realTest if true, cards are put up and down the box numbers
+     * @param askForLanguage2 if true, show base language (e.g. German) and ask for the other(e.g. English). If false ask for the base language
+     * @param multipleChoice if true, the answer is chosen from a few options instead of typed
+     */
+    public void startBoxTraining(int box, boolean realTest, boolean askForLanguage2, boolean multipleChoice){
         int boxsize = getCardNumberInBox(box);
         if(boxsize == 0){
             Toast.makeText(getActivity(), getString(R.string.toast_nocards), Toast.LENGTH_SHORT).show();
@@ -85,6 +100,72 @@ public class BoxFragment extends Fragment{
         intent.putExtra(TestActivity.PARAMBOX, box);
         intent.putExtra(TestActivity.PARAMREALTEST, realTest);
         intent.putExtra(TestActivity.PARAMASKFORLANG2, askForLanguage2);
+        intent.putExtra(TestActivity.PARAMMULTIPLECHOICE, multipleChoice);
+        intent.putExtra(TestActivity.PARAMORDER, getSessionOrder().name());
+        startActivity(intent);
+    }
+
+    /**
+     * @return order of the cards in test sessions chosen in the settings of the selected dictionary
+     */
+    protected SessionOrder.Strategy getSessionOrder(){
+        Dictionary dict = DictionaryManagement.getInstance(getActivity()).getSelectedDictionary();
+        return dict.getSessionOrder();
+    }
+
+    /**
+     * Maximum number of cards in a session of due cards
+     */
+    public static final int DUESESSIONLENGTH = 20;
+
+    /**
+     * @return number of cards of the selected dictionary, which are due until the end of today
+     */
+    protected int getDueCount(){
+        Dictionary dict = DictionaryManagement.getInstance(getActivity()).getSelectedDictionary();
+        return dict.getDueCount(Dictionary.getEndOfDay(System.currentTimeMillis()));
+    }
+
+    /**
+     * Init a session with the cards due until the end of today. Start TestActivity.
+     * @param askForLanguage2 if true, show base language (e.g. German) and ask for the other(e.g. English). If false ask for the base language
+     */
+    public void startDueTraining(boolean askForLanguage2){
+        if(getDueCount() == 0){
+            Toast.makeText(getActivity(), getString(R.string.toast_nocards), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        Intent intent  = new Intent(getActivity(), TestActivity.class);
+        intent.putExtra(TestActivity.PARAMDUECOUNT, DUESESSIONLENGTH);
+        intent.putExtra(TestActivity.PARAMREALTEST, true);
+        intent.putExtra(TestActivity.PARAMASKFORLANG2, askForLanguage2);
+        intent.putExtra(TestActivity.PARAMORDER, getSessionOrder().name());
+        startActivity(intent);
+    }
+
+    /**
+     * Default number of cards in a mixed session
+     */
+    public static final int MIXEDSESSIONLENGTH = 20;
+
+    /**
+     * Init a session with cards drawn from all boxes, lower boxes are drawn more often. Start TestActivity.
+     * @param realTest if true, cards are put up and down the box numbers
+     * @param askForLanguage2 if true, show base language (e.g. German) and ask for the other(e.g. English). If false ask for the base language
+     */
+    public void startMixedTraining(boolean realTest, boolean askForLanguage2){
+        DictionaryManagement dm = DictionaryManagement.getInstance(getActivity());
+        Dictionary dict = dm.getSelectedDictionary();
+        if(dict.getBoxSampler(null).isEmpty()){
+            Toast.makeText(getActivity(), getString(R.string.toast_nocards), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        Intent intent  = new Intent(getActivity(), TestActivity.class);
+        intent.putExtra(TestActivity.PARAMMIXEDLENGTH, MIXEDSESSIONLENGTH);
+        intent.putExtra(TestActivity.PARAMREALTEST, realTest);
+        intent.putExtra(TestActivity.PARAMASKFORLANG2, askForLanguage2);
         startActivity(intent);
     }
 
@@ -115,11 +196,14 @@ public class BoxFragment extends Fragment{
             return;
         }
 
-        BoxView bv = getView().findViewById(boxids[box-1]);
+        View anchor = getBoxView(box);
+        if(anchor == null){
+            anchor = getView();
+        }
 
         final int currentBox = box;
 
-        PopupMenu popup = new PopupMenu(getActivity(), bv);
+        PopupMenu popup = new PopupMenu(getActivity(), anchor);
         //Inflating the Popup using xml file
         popup.getMenuInflater().inflate(R.menu.boxpopup, popup.getMenu());
         Menu menu = popup.getMenu();
@@ -127,8 +211,15 @@ public class BoxFragment extends Fragment{
         DictionaryManagement dm = DictionaryManagement.getInstance(getActivity());
         Dictionary dict = dm.getSelectedDictionary();
 
+        int dueCount = getDueCount();
         for(int i=0; i<menu.size(); i++){
             MenuItem menuItem = menu.getItem(i);
+            if(menuItem.getItemId() == R.id.box_due1){
+                menuItem.setTitle(getString(R.string.menu_due_test, dueCount)+": "+dict.getBaseLanguage()+" -> ?");
+            }
+            if(menuItem.getItemId() == R.id.box_due2){
+                menuItem.setTitle(getString(R.string.menu_due_test, dueCount)+": "+dict.getLanguage()+" -> ?");
+            }
             if(menuItem.getItemId() == R.id.box_test1){
                 menuItem.setTitle(menuItem.getTitle()+": "+dict.getBaseLanguage()+" -> ?");
             }
@@ -141,6 +232,18 @@ public class BoxFragment extends Fragment{
             if(menuItem.getItemId() == R.id.box_training2){
                 menuItem.setTitle(menuItem.getTitle()+": "+dict.getLanguage()+" -> ?");
             }
+            if(menuItem.getItemId() == R.id.box_choice1){
+                menuItem.setTitle(menuItem.getTitle()+": "+dict.getBaseLanguage()+" -> ?");
+            }
+            if(menuItem.getItemId() == R.id.box_choice2){
+                menuItem.setTitle(menuItem.getTitle()+": "+dict.getLanguage()+" -> ?");
+            }
+            if(menuItem.getItemId() == R.id.box_mixed1){
+                menuItem.setTitle(menuItem.getTitle()+": "+dict.getBaseLanguage()+" -> ?");
+            }
+            if(menuItem.getItemId() == R.id.box_mixed2){
+                menuItem.setTitle(menuItem.getTitle()+": "+dict.getLanguage()+" -> ?");
+            }
         }
 
         //registering popup with OnMenuItemClickListener
@@ -161,6 +264,24 @@ public class BoxFragment extends Fragment{
                 if(item.getItemId() == R.id.box_training2){
                     startBoxTraining(currentBox, false, false);
                 }
+                if(item.getItemId() == R.id.box_due1){
+                    startDueTraining(true);
+                }
+                if(item.getItemId() == R.id.box_due2){
+                    startDueTraining(false);
+                }
+                if(item.getItemId() == R.id.box_choice1){
+                    startBoxTraining(currentBox, true, true, true);
+                }
+                if(item.getItemId() == R.id.box_choice2){
+                    startBoxTraining(currentBox, true, false, true);
+                }
+                if(item.getItemId() == R.id.box_mixed1){
+                    startMixedTraining(true, true);
+                }
+                if(item.getItemId() == R.id.box_mixed2){
+                    startMixedTraining(true, false);
+                }
 
                 return true;
             }
@@ -170,34 +291,194 @@ public class BoxFragment extends Fragment{
     }
 
     /**
-     * IDs for all possible box views
+     * Payload for notifyItemChanged: the cards of the box are the same, only redraw them
+     */
+    private static final Object REDRAW = new Object();
+
+    /**
+     * Holds the BoxView of one box
+     */
+    private class BoxViewHolder extends RecyclerView.ViewHolder {
+        public BoxView boxView;
+        /**
+         * Box shown by boxView, 0 if not yet bound
+         */
+        public int box = 0;
+
+        public BoxViewHolder(BoxView boxView) {
+            super(boxView);
+            this.boxView = boxView;
+        }
+    }
+
+    /**
+     * Creates BoxViews only for the visible boxes and reuses them while scrolling.
+     * Any number of boxes is supported.
+     */
+    private class BoxAdapter extends RecyclerView.Adapter<BoxViewHolder> {
+
+        /**
+         * Languages of the shown dictionary
+         */
+        private String language1, language2;
+
+        /**
+         * Cards of each box, entry i contains the cards of box i+1
+         */
+        private List<ArrayList<Card>> cardsByBox = new ArrayList<ArrayList<Card>>();
+
+        /**
+         * Show new boxes. Only boxes, whose cards changed, are bound again. All other
+         * visible boxes are only redrawn.
+         * @param language1 base language of the dictionary
+         * @param language2 second language of the dictionary
+         * @param newCardsByBox cards of each box, see Dictionary.getCardsByBox
+         */
+        public void setBoxes(String language1, String language2, List<ArrayList<Card>> newCardsByBox){
+            List<ArrayList<Card>> oldCardsByBox = cardsByBox;
+            boolean sameLayout = oldCardsByBox.size() == newCardsByBox.size()
+                    && (language1 == null ? this.language1 == null : language1.equals(this.language1))
+                    && (language2 == null ? this.language2 == null : language2.equals(this.language2));
+
+            this.language1 = language1;
+            this.language2 = language2;
+            cardsByBox = newCardsByBox;
+
+            if(! sameLayout){
+                notifyDataSetChanged();
+                return;
+            }
+            for(int i=0; i<newCardsByBox.size(); i++){
+                if(sameCards(oldCardsByBox.get(i), newCardsByBox.get(i))){
+                    notifyItemChanged(i, REDRAW);
+                }
+                else{
+                    notifyItemChanged(i);
+                }
+            }
+        }
+
+        /**
+         * @return true, if both lists contain the same card objects in the same order
+         */
+        private boolean sameCards(List<Card> a, List<Card> b){
+            if(a.size() != b.size()){
+                return false;
+            }
+            for(int i=0; i<a.size(); i++){
+                if(a.get(i) != b.get(i)){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int getItemCount() {
+            return cardsByBox.size();
+        }
+
+        @Override
+        public BoxViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            BoxView boxView = (BoxView) getActivity().getLayoutInflater().inflate(R.layout.box_item, parent, false);
+            return new BoxViewHolder(boxView);
+        }
+
+        @Override
+        public void onBindViewHolder(BoxViewHolder holder, int position, List<Object> payloads) {
+            if(! payloads.isEmpty() && holder.box == position+1){
+                boolean onlyRedraw = true;
+                for(Object payload: payloads){
+                    if(payload != REDRAW){
+                        onlyRedraw = false;
+                    }
+                }
+                if(onlyRedraw){
+                    //Same cards, but texts might have been edited
+                    holder.boxView.invalidate();
+                    return;
+                }
+            }
+            onBindViewHolder(holder, position);
+        }
+
+        @Override
+        public void onBindViewHolder(BoxViewHolder holder, int position) {
+            int box = position+1;
+            BoxView bv = holder.boxView;
+            bv.setLanguage1(language1);
+            bv.setLanguage2(language2);
+            bv.setLevel(box);
+            ArrayList<Card> boxCards = cardsByBox.get(position);
+            if(bv.showsCards(boxCards)){
+                bv.invalidate();
+            }
+            else {
+                bv.setCards(boxCards);
+            }
+            if(holder.box != box){
+                initGestureDetection(bv, box);
+                holder.box = box;
+            }
+        }
+    }
+
+    /**
+     * Shows the boxes, null while no view is created
+     */
+    private RecyclerView recyclerView;
+
+    /**
+     * Adapter of recyclerView
      */
-    public final static int[] boxids = new int[]{R.id.boxview1, R.id.boxview2, R.id.boxview3, R.id.boxview4, R.id.boxview5,
-                                                 R.id.boxview6, R.id.boxview7, R.id.boxview8, R.id.boxview9, R.id.boxview10};
+    private BoxAdapter adapter;
+
+    /**
+     * @param box the box number starting with 1
+     * @return the view currently showing this box, null if the box is not visible
+     */
+    public BoxView getBoxView(int box){
+        if(recyclerView == null){
+            return null;
+        }
+        RecyclerView.ViewHolder holder = recyclerView.findViewHolderForAdapterPosition(box-1);
+        if(holder == null){
+            return null;
+        }
+        return ((BoxViewHolder) holder).boxView;
+    }
 
     /**
      * Place cards into box views
      * @param root root view of this fragment
      */
     public void updateBoxViews(View root){
-        if(root == null){
+        if(root == null || adapter == null){
             return;
         }
         DictionaryManagement dm = DictionaryManagement.getInstance(getActivity());
         Dictionary dict = dm.getSelectedDictionary();
 
-        BoxView.clearFlags();
-
-        for(int box=1; box<=dict.getBoxcount(); box++){
-            BoxView bv = root.findViewById(boxids[box-1]);
-            bv.setLanguage1(dict.getBaseLanguage());
-            bv.setLanguage2(dict.getLanguage());
-            bv.setLevel(box);
-            ArrayList<Card> boxCards = dict.getCardsForBox(box);
-            bv.setCards(boxCards);
+        long version = dict.getVersion();
+        if(root == shownRoot && dict == shownDictionary && version == shownVersion){
+            //Nothing changed since the last update
+            return;
         }
+
+        adapter.setBoxes(dict.getBaseLanguage(), dict.getLanguage(), dict.getCardsByBox());
+
+        shownRoot = root;
+        shownDictionary = dict;
+        shownVersion = version;
     }
 
+    /**
+     * View, dictionary and dictionary version shown by the last call of updateBoxViews
+     */
+    private View shownRoot;
+    private Dictionary shownDictionary;
+    private long shownVersion;
+
     /**
      * Get access to GestureListener for a box
      * @param box
@@ -236,7 +517,11 @@ public class BoxFragment extends Fragment{
             }
             @Override
             public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-                boxview.setOffset( (int)(boxview.getOffset() + distanceX), false );
+                if(Math.abs(distanceX) > Math.abs(distanceY) && boxview.getParent() != null){
+                    //Horizontal scroll of the cards, the box list must not scroll vertically now
+                    boxview.getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                boxview.setOffset( (int)(boxview.getOffset() + distanceX), true );
                 boxview.fling(0);
                 boxview.startScrollIndicator();
                 return true;
@@ -267,26 +552,20 @@ public class BoxFragment extends Fragment{
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View result = inflater.inflate(R.layout.boxes_fragment, container, false);
 
-        DictionaryManagement dm = DictionaryManagement.getInstance(getActivity());
-        Dictionary dict = dm.getSelectedDictionary();
-
-        for(int i=1; i<=10; i++){
-            BoxView boxi = result.findViewById(boxids[i-1]);
-            if(i <= dict.getBoxcount()){
-                final int currentBox = i;
-                initGestureDetection(boxi, currentBox);
-            }
-            else{
-                if(boxi.getParent() instanceof LinearLayout) {
-                    LinearLayout boxesFrame = (LinearLayout) boxi.getParent();
-                    boxesFrame.removeView(boxi);
-                    if (boxesFrame.getChildCount() == 0 && boxesFrame.getParent() instanceof LinearLayout) {
-                        LinearLayout globalParent = (LinearLayout) boxesFrame.getParent();
-                        globalParent.removeView(boxesFrame);
-                    }
-                }
-            }
+        recyclerView = result.findViewById(R.id.boxes_recycler);
+        int columns = getResources().getInteger(R.integer.box_columns);
+        if(columns > 1){
+            recyclerView.setLayoutManager(new GridLayoutManager(getActivity(), columns));
+        }
+        else{
+            recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        }
+        //Changed boxes keep their view, so that they are not faded in again
+        if(recyclerView.getItemAnimator() instanceof SimpleItemAnimator){
+            ((SimpleItemAnimator) recyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
         }
+        adapter = new BoxAdapter();
+        recyclerView.setAdapter(adapter);
 
         return result;
     }
@@ -21,7 +21,6 @@ package de.karbach.superapp;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -29,15 +28,19 @@ import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.view.GestureDetectorCompat;
+import android.support.v4.view.ViewCompat;
 import android.text.format.Time;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.animation.AnimationUtils;
+import android.widget.OverScroller;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -62,16 +65,21 @@ public class BoxView extends View {
     private String exampleWord = null;
 
     /**
-     * Encoded Bitmaps, loaded from resources.
+     * Bitmaps from the BitmapCache, decoded for the current size of this view.
      */
-    private static Bitmap note, box, boxend, drawer, cardsbmp, flag1, flag2;
+    private Bitmap note, box, boxend, drawer, cardsbmp;
+
+    /**
+     * Languages, for which the flags are shown on each card
+     */
+    private String language1, language2;
     /**
      * Rectangles with size of source bitmaps, needed to draw them from src to dest location.
      * src: Rect of source size for note
      * box: Rect of source size for box
      * ...
      */
-    private Rect src,boxsrc,boxendsrc, drawersrc,stacksrc, flagsrc;
+    private Rect src,boxsrc,boxendsrc, drawersrc,stacksrc;
 
     /**
      * Allows to move card list horizontally.
@@ -84,39 +92,113 @@ public class BoxView extends View {
     private int offset = 0;
 
     /**
-     * Start velocity for flinging
+     * Physics of the fling: deceleration, overscroll at both ends and spring back
      */
-    private float flingvelocity = 0;
+    private OverScroller scroller;
+
     /**
-     * Start time for flinging
+     * Computes the next animation frame, posted with postOnAnimation
      */
-    private long startTime;
+    private Runnable frameCallback = new Runnable() {
+        @Override
+        public void run() {
+            onAnimationFrame();
+        }
+    };
+
     /**
-     * parameters for fling curve
+     * Start flinging with given velocity, 0 stops a running fling
+     * @param velo velocity in pixels per second, positive values move the cards to the right
      */
-    private int startOffset, turningPointTime, turningPointOffset;
+    public void fling(float velo){
+        if(velo == 0){
+            scroller.forceFinished(true);
+            return;
+        }
+        int overscroll = height/4;
+        scroller.fling(offset, 0, Math.round(-velo), 0, -height, Math.max(-height, maxOffset), 0, 0, overscroll, 0);
+        startScrollIndicator();
+    }
+
     /**
-     * Acceleration used in x^2 equation for fling curve.
+     * Schedule onAnimationFrame for the next frame or after a delay.
+     * Replaces an already scheduled frame.
+     * @param delay delay in ms, 0 for the next frame
      */
-    private float acceleration;
+    private void scheduleFrame(long delay){
+        removeCallbacks(frameCallback);
+        if(delay > 0){
+            ViewCompat.postOnAnimationDelayed(this, frameCallback, delay);
+        }
+        else{
+            ViewCompat.postOnAnimation(this, frameCallback);
+        }
+    }
 
     /**
-     * Start flinging with given velocity
-     * @param velo
+     * Advance fling and scroll indicator to the time of the current frame.
+     * Redraws only, if offset or indicator changed. Schedules the next frame only
+     * while the fling runs or the indicator fades out.
      */
-    public void fling(float velo){
-        flingvelocity = -velo*0.001f;
-        startTime = System.currentTimeMillis();
-        startOffset = getOffset();
+    protected void onAnimationFrame(){
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        boolean changed = false;
+        boolean flinging = false;
+
+        if(scroller.computeScrollOffset()){
+            int newOffset = scroller.getCurrX();
+            if(newOffset != offset){
+                offset = newOffset;
+                changed = true;
+            }
+            flinging = ! scroller.isFinished();
+            if(flinging){
+                //Keep indicator visible during the fling
+                scrollStartTime = now;
+            }
+        }
 
-        int sign = flingvelocity < 0 ? -1 : 1;
-        acceleration = (-sign)*0.005f;//Brakes in the oposite direction
-        turningPointTime = Math.round( -flingvelocity / (2*acceleration) );//Wendepunkt of equation
-        turningPointOffset = Math.round( acceleration * turningPointTime*turningPointTime+flingvelocity*turningPointTime+startOffset );//Actual target point of offset
+        long nextFrameDelay = 0;
+        if(scrollAlpha > 0){
+            long diff = now-scrollStartTime;
+            int alpha;
+            if(diff < INDICATORHOLDMILLIS){
+                alpha = startAlpha;
+                nextFrameDelay = INDICATORHOLDMILLIS-diff;
+            }
+            else {
+                alpha = Math.max(0, startAlpha - (int) ((diff-INDICATORHOLDMILLIS) / 4));
+            }
+            if(alpha != scrollAlpha){
+                scrollAlpha = alpha;
+                changed = true;
+            }
+        }
 
-        postInvalidate();
+        if(changed){
+            invalidate();
+        }
+        if(flinging){
+            scheduleFrame(0);
+        }
+        else if(scrollAlpha > 0){
+            scheduleFrame(nextFrameDelay);
+        }
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        removeCallbacks(frameCallback);
+        scroller.forceFinished(true);
+    }
+
+    /**
+     * Time in ms, for which the scroll indicator is fully shown, before it fades out
+     */
+    private static final long INDICATORHOLDMILLIS = 500;
+
     /**
      * Scroll indicator is drawn with this alpha value
      * Between startAlpha (fully visible) and 0 (hidden)
@@ -144,9 +226,13 @@ public class BoxView extends View {
      */
     public void setScrollAlpha(int alpha){
         if(alpha <= 255 && alpha >= 0) {
+            if(alpha != scrollAlpha){
+                invalidate();
+            }
             scrollAlpha = alpha;
-            scrollStartTime = System.currentTimeMillis();
+            scrollStartTime = AnimationUtils.currentAnimationTimeMillis();
             startAlpha = alpha;
+            scheduleFrame(0);
         }
     }
 
@@ -172,88 +258,198 @@ public class BoxView extends View {
          */
         public String displayText2;
 
+        /**
+         * Version of the card, for which this info was calculated
+         */
+        public int version;
+
         /**
          * @param lang1Length Length of card text string for lang 1, card.getLang1().length()
          * @param lang2Length Length of card text string for lang 2, card.getLang2().length()
          * @param displayText1 Possibly shortened display text for language 1, e.g. "Vokabe..."
          * @param displayText2 Possibly shortened display text for language 2, e.g. "Vocabu..."
+         * @param version Version of the card, see Card.getVersion()
          */
-        public CardInfo(int lang1Length, int lang2Length, String displayText1, String displayText2){
+        public CardInfo(int lang1Length, int lang2Length, String displayText1, String displayText2, int version){
             this.lang1Length = lang1Length;
             this.lang2Length = lang2Length;
             this.displayText1 = displayText1;
             this.displayText2 = displayText2;
+            this.version = version;
         }
     }
 
+    /**
+     * Maximum number of CardInfo objects kept, must be larger than the number of
+     * visible cards plus twice the prefetch margin
+     */
+    private static final int INFOCACHESIZE = 64;
+
+    /**
+     * Number of cards left and right of the visible ones, for which CardInfo is calculated in advance
+     */
+    private static final int PREFETCHMARGIN = 8;
+
     /**
      * Cards to display in this view
      */
     private List<Card> cards = new ArrayList<Card>();
     /**
-     * Precalculated info on cards
+     * Precalculated info on the recently drawn cards, least recently used are dropped.
+     * Cards do not override equals, so they are compared by identity.
+     */
+    private Map<Card,CardInfo> cardsInfo = new LinkedHashMap<Card, CardInfo>(INFOCACHESIZE, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Card, CardInfo> eldest) {
+            return size() > INFOCACHESIZE;
+        }
+    };
+
+    /**
+     * First and last index of cards, for which CardInfo was prefetched last
      */
-    private Map<Card,CardInfo> cardsInfo = new HashMap<Card, CardInfo>();
+    private int prefetchedFrom = -1, prefetchedTo = -1;
 
     /**
-     * Set new cards, calculate infos on cards, invalidate.
+     * Set new cards, invalidate. Infos on cards are calculated, when they are drawn.
      * @param cards
      */
     public void setCards(List<Card> cards){
-        this.cards = cards;
-        cardsInfo.clear();
-        if(cards != null){
-            for(Card card: cards){
-                int length1 = 0;
-                String displayText1 = "";
-                if(card.getLang1()!=null){
-                    length1 = card.getLang1().length();
-                    displayText1 = card.getLang1();
-                }
-                int length2 = 0;
-                String displayText2 = "";
-                if(card.getLang2()!=null){
-                    length2 = card.getLang2().length();
-                    displayText2 = card.getLang2();
-                }
-                int maxlength = exampleWord.length()-3;
-                if(length1 > maxlength){
-                    displayText1 = displayText1.substring(0, maxlength-3)+"...";
-                }
-                if(length2 > maxlength){
-                    displayText2 = displayText2.substring(0, maxlength-3)+"...";
-                }
-                cardsInfo.put(card, new CardInfo(length1, length2, displayText1, displayText2));
-            }
-        }
+        this.cards = cards == null ? new ArrayList<Card>() : cards;
+        prefetchedFrom = prefetchedTo = -1;
 
         measure();
         postInvalidate();
     }
 
     /**
-     * The box level, usually 1..5
+     * @param other list of cards
+     * @return true if this view shows exactly the same card objects in the same order
      */
-    private int level = 0;
+    public boolean showsCards(List<Card> other){
+        if(other == null || other.size() != cards.size()){
+            return false;
+        }
+        for(int i=0; i<other.size(); i++){
+            if(other.get(i) != cards.get(i)){
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
-     * Make sure, that flags are reloaded from file according to given languages
+     * Get the info on a card from the cache or calculate it
+     * @param card the card to draw
+     * @return the up to date info on this card
      */
-    public static void clearFlags(){
-        flag1 = null;
-        flag2 = null;
+    private CardInfo getCardInfo(Card card){
+        CardInfo result = cardsInfo.get(card);
+        if(result != null && result.version == card.getVersion()){
+            return result;
+        }
+
+        int length1 = 0;
+        String displayText1 = "";
+        if(card.getLang1()!=null){
+            length1 = card.getLang1().length();
+            displayText1 = ellipsize(card.getLang1());
+        }
+        int length2 = 0;
+        String displayText2 = "";
+        if(card.getLang2()!=null){
+            length2 = card.getLang2().length();
+            displayText2 = ellipsize(card.getLang2());
+        }
+        result = new CardInfo(length1, length2, displayText1, displayText2, card.getVersion());
+        cardsInfo.put(card, result);
+        return result;
+    }
+
+    /**
+     * Appended to shortened texts
+     */
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * Number of shortened texts kept in ellipsizedTexts
+     */
+    private static final int ELLIPSIZECACHESIZE = 512;
+
+    /**
+     * Shortened display texts shared by all box views.
+     * Key is text size, available width and the full text.
+     */
+    private static LruCache<String, String> ellipsizedTexts = new LruCache<String, String>(ELLIPSIZECACHESIZE);
+
+    /**
+     * Available width in pixels for the text on a card
+     */
+    private int textWidth;
+
+    /**
+     * Shorten the text with textpaint, so that it fits into textWidth pixels including the ellipsis.
+     * @param text full text to draw on a card
+     * @return the text, if it fits, otherwise its longest fitting prefix followed by ...
+     */
+    private String ellipsize(String text){
+        String key = textpaint.getTextSize()+":"+textWidth+":"+text;
+        String result = ellipsizedTexts.get(key);
+        if(result != null){
+            return result;
+        }
+
+        if(textpaint.measureText(text) <= textWidth){
+            result = text;
+        }
+        else{
+            float available = Math.max(0, textWidth - textpaint.measureText(ELLIPSIS));
+            int count = textpaint.breakText(text, true, available, null);
+            result = text.substring(0, count)+ELLIPSIS;
+        }
+        ellipsizedTexts.put(key, result);
+        return result;
+    }
+
+    /**
+     * Calculate the infos for the cards around the visible ones, so that they
+     * are available, when the cards are scrolled into view.
+     * @param minimumI index of the first visible card
+     * @param maximumI index of the last visible card
+     */
+    private void prefetchCardInfos(int minimumI, int maximumI){
+        int from = Math.max(0, minimumI-PREFETCHMARGIN);
+        int to = Math.min(cards.size()-1, maximumI+PREFETCHMARGIN);
+        if(from == prefetchedFrom && to == prefetchedTo){
+            return;
+        }
+        //Visible cards last, so that they are the most recently used
+        for(int i=from; i<=to; i++){
+            if(i < minimumI || i > maximumI){
+                Card card = cards.get(i);
+                if(card != null){
+                    getCardInfo(card);
+                }
+            }
+        }
+        prefetchedFrom = from;
+        prefetchedTo = to;
     }
 
+    /**
+     * The box level, usually 1..5
+     */
+    private int level = 0;
+
     /**
      * Set the base language to use
      * @param lang1
      */
     public void setLanguage1(String lang1){
-        Resources res = getResources();
-        if(flag1 == null) {
-            flag1 = BitmapFactory.decodeResource(res, pictureHelper.getDrawableResourceForLanguage(lang1));
+        if(lang1 == null ? language1 != null : ! lang1.equals(language1)) {
+            language1 = lang1;
+            measure();
         }
-        flagsrc = new Rect(0,0, flag1.getWidth()-1, flag1.getHeight()-1);
     }
 
     /**
@@ -261,9 +457,9 @@ public class BoxView extends View {
      * @param lang2
      */
     public void setLanguage2(String lang2){
-        Resources res = getResources();
-        if(flag2 == null) {
-            flag2 = BitmapFactory.decodeResource(res, pictureHelper.getDrawableResourceForLanguage(lang2));
+        if(lang2 == null ? language2 != null : ! lang2.equals(language2)) {
+            language2 = lang2;
+            measure();
         }
     }
 
@@ -272,7 +468,13 @@ public class BoxView extends View {
      * @param level
      */
     public void setLevel(int level){
+        if(level == this.level){
+            return;
+        }
         this.level = level;
+        //Views are reused for other boxes, do not keep the scroll position of the old box
+        scroller.forceFinished(true);
+        offset = 0;
         measure();
         postInvalidate();
     }
@@ -287,7 +489,7 @@ public class BoxView extends View {
     /**
      * Set the offset to use. E.g. used for implementing scrolling
      * @param offset new offset
-     * @param fromUIThread if false, call postInvalidate to redraw this view
+     * @param fromUIThread true if called on the UI thread, then invalidate is used, otherwise postInvalidate
      */
     public void setOffset(int offset, boolean fromUIThread){
         int origOffset = this.offset;
@@ -300,7 +502,10 @@ public class BoxView extends View {
         this.offset = offset;
 
         if(origOffset != offset){
-            if(! fromUIThread) {
+            if(fromUIThread) {
+                invalidate();
+            }
+            else{
                 postInvalidate();
             }
         }
@@ -311,6 +516,11 @@ public class BoxView extends View {
      */
     private PictureHelper pictureHelper;
 
+    /**
+     * Provides all bitmaps decoded to the size needed
+     */
+    private BitmapCache bitmapCache;
+
     /**
      * Init box view, init Paint objects, load bitmaps
      * @param context
@@ -321,7 +531,9 @@ public class BoxView extends View {
 
         exampleWord = context.getString(R.string.example_word);
 
-        pictureHelper = new PictureHelper(context);
+        pictureHelper = PictureHelper.getInstance(context);
+        bitmapCache = BitmapCache.getInstance(context);
+        scroller = new OverScroller(context);
 
         linePaint = new Paint();
         linePaint.setStrokeWidth(10);
@@ -352,23 +564,19 @@ public class BoxView extends View {
         fillPaint = new Paint();
         fillPaint.setColor(Color.WHITE);
         fillPaint.setStyle(Paint.Style.FILL);
+    }
 
+    /**
+     * Get the bitmaps from the cache, decoded according to the height of this view.
+     * Calculates the source rectangles for the bitmaps.
+     */
+    private void loadBitmaps(){
         Resources res = getResources();
-        if(note == null) {
-            note = BitmapFactory.decodeResource(res, R.drawable.fa_sticky_note);
-        }
-        if(box == null) {
-            box = BitmapFactory.decodeResource(res, R.drawable.box_no_end);
-        }
-        if(boxend == null) {
-            boxend = BitmapFactory.decodeResource(res, R.drawable.boxend);
-        }
-        if(cardsbmp == null) {
-            cardsbmp = BitmapFactory.decodeResource(res, R.drawable.cardstack);
-        }
-        if(drawer == null) {
-            drawer = BitmapFactory.decodeResource(res, R.drawable.drawer);
-        }
+        note = bitmapCache.getBitmap(res, R.drawable.fa_sticky_note, height-2*padding, height-2*padding);
+        box = bitmapCache.getBitmap(res, R.drawable.box_no_end, 0, height);
+        boxend = bitmapCache.getBitmap(res, R.drawable.boxend, 0, height);
+        cardsbmp = bitmapCache.getBitmap(res, R.drawable.cardstack, height/3, height/6);
+        drawer = bitmapCache.getBitmap(res, R.drawable.drawer, height, 0);
 
         src = new Rect(0,0, note.getWidth()-1, note.getHeight()-1);
         boxsrc = new Rect(0,0, box.getWidth()-1, box.getHeight()-1);
@@ -377,6 +585,16 @@ public class BoxView extends View {
         stacksrc = new Rect(0,0, cardsbmp.getWidth()-1, cardsbmp.getHeight()-1);
     }
 
+    /**
+     * Get the flag for a language from the cache, decoded to the size it is drawn with.
+     * Call after measureTextSize.
+     * @param language language name, e.g. Schwedisch
+     * @return flag bitmap for the language
+     */
+    private Bitmap getFlag(String language){
+        return bitmapCache.getBitmap(getResources(), pictureHelper.getDrawableResourceForLanguage(language), flagWidth, exampleWordHeight);
+    }
+
     /**
      * Note bitmap with two flags for the given languages in it
      */
@@ -389,18 +607,28 @@ public class BoxView extends View {
     /**
      * Pregenerate an empty card only with the flags on.
      * Call this within measure to get the sizes right.
+     * The card is shared with all box views showing the same languages in
+     * the same size, it is only rendered, if it is not found in the BitmapCache.
      */
     private void generateFlaggedNoteBitmap(){
         if(note == null || getVisibility() == INVISIBLE){
             return;
         }
+
+        dest.set(0, 0, height -1 - 2*padding, height -1 - 2*padding);
+        flaggedNoteBitmapSrc.set(dest);
+
+        String key = "flaggednote:"+language1+":"+language2+":"+dest.width()+"x"+dest.height()+":"+exampleWordHeight;
+        flaggedNoteBitmap = bitmapCache.get(key);
+        if(flaggedNoteBitmap != null){
+            return;
+        }
+
         android.graphics.Bitmap.Config bitmapConfig = android.graphics.Bitmap.Config.ARGB_8888;
         if(note.getConfig() != null) {
             bitmapConfig = note.getConfig();
         }
 
-        dest.set(0, 0, height -1 - 2*padding, height -1 - 2*padding);
-
         flaggedNoteBitmap = Bitmap.createBitmap(dest.width(), dest.height(), bitmapConfig);
 
         Canvas canvas = new Canvas(flaggedNoteBitmap);
@@ -409,12 +637,15 @@ public class BoxView extends View {
 
         int flagleft = flagOffset;
         int flagright = flagOffset+flagWidth;
+        Bitmap flag1 = getFlag(language1);
         flagrect.set(flagleft, exampleWordHeight*2, flagright, exampleWordHeight*3);
-        canvas.drawBitmap(flag1, flagsrc, flagrect, linePaint);
+        canvas.drawBitmap(flag1, new Rect(0,0, flag1.getWidth()-1, flag1.getHeight()-1), flagrect, linePaint);
 
+        Bitmap flag2 = getFlag(language2);
         flagrect.set(flagleft, exampleWordHeight*4, flagright, exampleWordHeight*5);
-        canvas.drawBitmap(flag2, flagsrc, flagrect, linePaint);
-        flaggedNoteBitmapSrc.set(dest);
+        canvas.drawBitmap(flag2, new Rect(0,0, flag2.getWidth()-1, flag2.getHeight()-1), flagrect, linePaint);
+
+        bitmapCache.put(key, flaggedNoteBitmap);
     }
 
     /**
@@ -486,31 +717,116 @@ public class BoxView extends View {
      */
     private int exampleWordHeight;
 
+    /**
+     * Largest text size tried by measureTextSize
+     */
+    private static final int MAXTEXTSIZE = 1000;
+
+    /**
+     * Identifies the input of measureTextSize
+     */
+    private static class TextSizeKey{
+        public final int cardlength;
+        public final String word;
+        public final Typeface typeface;
+
+        public TextSizeKey(int cardlength, String word, Typeface typeface){
+            this.cardlength = cardlength;
+            this.word = word;
+            this.typeface = typeface;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(! (o instanceof TextSizeKey)){
+                return false;
+            }
+            TextSizeKey other = (TextSizeKey) o;
+            return cardlength == other.cardlength && typeface == other.typeface
+                    && (word == null ? other.word == null : word.equals(other.word));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = cardlength;
+            result = 31*result + (word == null ? 0 : word.hashCode());
+            result = 31*result + (typeface == null ? 0 : typeface.hashCode());
+            return result;
+        }
+    }
+
+    /**
+     * Result of measureTextSize
+     */
+    private static class TextSize{
+        /**
+         * Text size, for which the example word fits into a card
+         */
+        public final float textSize;
+        /**
+         * Height of the example word with this text size
+         */
+        public final int wordHeight;
+
+        public TextSize(float textSize, int wordHeight){
+            this.textSize = textSize;
+            this.wordHeight = wordHeight;
+        }
+    }
+
+    /**
+     * Maximum number of measured text sizes kept, one per card width, example word and typeface
+     */
+    private static final int TEXTSIZECACHESIZE = 16;
+
+    /**
+     * Text sizes already measured by any box view. All boxes usually have the same size,
+     * so the size is searched only once. Least recently used sizes are dropped.
+     */
+    private static LruCache<TextSizeKey, TextSize> textSizes = new LruCache<TextSizeKey, TextSize>(TEXTSIZECACHESIZE);
+
     /**
      * Adjust textpaint.textsize so that example word fits horizontally into a card
      * @param cardlength width of one card in pixels
      */
     protected void measureTextSize(int cardlength){
-        float textsize = textpaint.getTextSize();
-        textpaint.getTextBounds(exampleWord, 0, exampleWord.length(), textrect);
-        int maxtries = 1000;
-        int tries = 0;
-        while(textrect.width() < cardlength && ++tries < maxtries ){
-            textsize+=1.0f;
-            textpaint.setTextSize(textsize);
-            textpaint.getTextBounds(exampleWord, 0, exampleWord.length(), textrect);
-        }
-        tries = 0;
-        while(textrect.width() > cardlength && textsize > 0  && ++tries < maxtries){
-            textsize-=1.0f;
-            textpaint.setTextSize(textsize);
-            textpaint.getTextBounds(exampleWord, 0, exampleWord.length(), textrect);
+        TextSizeKey key = new TextSizeKey(cardlength, exampleWord, textpaint.getTypeface());
+        TextSize size = textSizes.get(key);
+        if(size == null){
+            size = searchTextSize(cardlength);
+            textSizes.put(key, size);
         }
-        exampleWordHeight = textrect.height();
+        textpaint.setTextSize(size.textSize);
+        exampleWordHeight = size.wordHeight;
         centertextpaint.setTextSize(textpaint.getTextSize());
         centertextpaintBlue.setTextSize(textpaint.getTextSize());
     }
 
+    /**
+     * Binary search for the largest integer text size, for which the example word
+     * is not wider than the card. The text width grows with the text size.
+     * @param cardlength width of one card in pixels
+     * @return the found text size and the height of the example word
+     */
+    private TextSize searchTextSize(int cardlength){
+        int low = 0;
+        int high = MAXTEXTSIZE;
+        while(low < high){
+            int mid = (low+high+1)/2;
+            textpaint.setTextSize(mid);
+            textpaint.getTextBounds(exampleWord, 0, exampleWord.length(), textrect);
+            if(textrect.width() <= cardlength){
+                low = mid;
+            }
+            else{
+                high = mid-1;
+            }
+        }
+        textpaint.setTextSize(low);
+        textpaint.getTextBounds(exampleWord, 0, exampleWord.length(), textrect);
+        return new TextSize(low, textrect.height());
+    }
+
     /**
      * getWidth() and getHeight() of this view
      */
@@ -566,6 +882,8 @@ public class BoxView extends View {
 
         exampleWordLength = exampleWord.length();
 
+        loadBitmaps();
+
         measureTextSize(height);
 
         dest = new Rect(0,0,0,0);
@@ -589,6 +907,14 @@ public class BoxView extends View {
         flagOffset = height / 12;
         flagWidth = exampleWordHeight*3/2;
 
+        int newTextWidth = height-2*padding - 2*flagOffset - flagWidth;
+        if(newTextWidth != textWidth){
+            textWidth = newTextWidth;
+            //Display texts must be shortened for the new size
+            cardsInfo.clear();
+            prefetchedFrom = prefetchedTo = -1;
+        }
+
         generateFlaggedNoteBitmap();
         generateSmallDrawer();
     }
@@ -600,49 +926,6 @@ public class BoxView extends View {
         measure();
     }
 
-    /**
-     * Adapt the current offset according to fling equation
-     */
-    protected void handleFling(){
-        if(flingvelocity == 0){
-            return;
-        }
-
-        long absolutedeltaT = System.currentTimeMillis()-startTime;
-
-        int calcOffset = Math.round( absolutedeltaT*absolutedeltaT*acceleration+flingvelocity*absolutedeltaT+startOffset );
-
-        if(absolutedeltaT > turningPointTime){
-            calcOffset = turningPointOffset;
-        }
-
-        setOffset(calcOffset, true);
-        startScrollIndicator();
-
-        if(absolutedeltaT > turningPointTime || getOffset() != calcOffset){//Time ended or offset cannot be changed anymore
-            flingvelocity = 0;
-        }
-    }
-
-    /**
-     * Animate alpha for scroll indicator
-     */
-    protected void handleScrollAlpha(){
-        if(scrollAlpha == 0){
-            return;
-        }
-        long diff = System.currentTimeMillis()-scrollStartTime;
-        if(diff < 500){
-            scrollAlpha = startAlpha;
-        }
-        else {
-            scrollAlpha = startAlpha - (int) ((diff-500) / 4);
-        }
-        if(scrollAlpha < 0){
-            scrollAlpha = 0;
-        }
-    }
-
     /**
      * Frame around the draw area of a card
      */
@@ -663,17 +946,14 @@ public class BoxView extends View {
      * @param canvas
      */
     public void drawBox(Canvas canvas) {
-        int oldoffset = getOffset();
-        handleFling();
-        handleScrollAlpha();
-        int newoffset = getOffset();
-
         int minimumI = (1+offset+padding)/height-1;//Derived from (i+2)*height-1-offset-padding >= height ; in other words dest.right >= 0
         int maximumI = (width+offset-padding)/height-1;//Derived from (i+1)*height-offset+padding >= width ; in other words dest.left <= width
         if(maximumI >= cards.size()){
             maximumI = cards.size()-1;
         }
         int cardssize = cards.size();
+        prefetchCardInfos(minimumI, maximumI);
+        drawDrawerStrip(canvas, minimumI, maximumI, cardssize);
         float minleft = 0.0f;
         float maxright = 0.0f;
         for(int i = minimumI; i<= maximumI; i++) {
@@ -695,11 +975,6 @@ public class BoxView extends View {
                 }
             }
 
-            drawerTarget.set(dest.left-padding, dest.bottom+1-rescaleRectDrawer.height()+padding, dest.right+padding+1, dest.bottom+padding );
-            int alpha = (cardssize == 0 || i<0) ? 255 : (255-( (i*120)/ cardssize));
-            transparentPaint.setAlpha(alpha);
-            canvas.drawBitmap(smallDrawer, smallDrawerScr, drawerTarget, transparentPaint);
-
             Card card = null;
             if(i>=0){
                 card = cards.get(i);
@@ -712,23 +987,108 @@ public class BoxView extends View {
         int leftEnd = (cards.size()+1)*height-offset;
         drawScrollIndicator(canvas, leftEnd, maxright, minleft, cardssize);
 
-        canvas.drawRect(0,0, height-1, height-1, fillPaint);
-        canvas.drawBitmap(box, boxsrc, rescaleRectBox, linePaint);
-
         //Draw Box end
         if(leftEnd < width) {
             rescaleRectBoxEnd.set(leftEnd, 0, leftEnd + rescaleRectBoxEnd.width(), rescaleRectBoxEnd.height());
             canvas.drawBitmap(boxend, boxendsrc, rescaleRectBoxEnd, linePaint);
         }
 
+        canvas.drawBitmap(getChromeLayer(cardssize), 0, 0, null);
+    }
+
+    /**
+     * Offscreen layer with the box, the level and the number of cards
+     */
+    private Bitmap chromeLayer;
+    /**
+     * Level, number of cards and view height, for which chromeLayer was drawn
+     */
+    private int chromeLevel, chromeCount, chromeHeight;
+
+    /**
+     * Get the layer with all parts of the box, which do not move with the cards.
+     * It is drawn again only, if the level, the number of cards or the size changed.
+     * @param cardssize number of cards in the box
+     * @return the layer to draw at the top left corner of the view
+     */
+    private Bitmap getChromeLayer(int cardssize){
+        if(chromeLayer != null && chromeLevel == level && chromeCount == cardssize && chromeHeight == height){
+            return chromeLayer;
+        }
+
+        int layerWidth = Math.max(height, rescaleRectBox.right+1);
+        if(chromeLayer == null || chromeLayer.getWidth() != layerWidth || chromeLayer.getHeight() != height) {
+            chromeLayer = Bitmap.createBitmap(layerWidth, height, Bitmap.Config.ARGB_8888);
+        }
+        else{
+            chromeLayer.eraseColor(Color.TRANSPARENT);
+        }
+        Canvas canvas = new Canvas(chromeLayer);
+
+        canvas.drawRect(0,0, height-1, height-1, fillPaint);
+        canvas.drawBitmap(box, boxsrc, rescaleRectBox, linePaint);
+
         canvas.drawText(String.valueOf(level), height/4, height/2+levelheight, levelPaint);
         canvas.drawBitmap(cardsbmp, stacksrc, stackdest, levelPaint);
 
-        canvas.drawText(String.valueOf(cards.size()), height*5/6, height*5/6, centertextpaint);
-        //Ensure animation is shown
-        if(flingvelocity != 0 || scrollAlpha > 0){
-            invalidate();
+        canvas.drawText(String.valueOf(cardssize), height*5/6, height*5/6, centertextpaint);
+
+        chromeLevel = level;
+        chromeCount = cardssize;
+        chromeHeight = height;
+        return chromeLayer;
+    }
+
+    /**
+     * Offscreen layer with the drawer tiles below the cards firstStripIndex..lastStripIndex
+     */
+    private Bitmap drawerStrip;
+    /**
+     * Range of card indices, number of cards and view height, for which drawerStrip was drawn
+     */
+    private int firstStripIndex, lastStripIndex, stripCardsSize, stripHeight;
+
+    /**
+     * Draw the drawer tiles below the visible cards. The tiles are composed into
+     * an offscreen strip, which is drawn again only, when other cards become visible.
+     * While scrolling within a card width, only the position of the strip changes.
+     * @param canvas canvas to draw into
+     * @param minimumI index of the first visible card, might be negative for the empty part of the box
+     * @param maximumI index of the last visible card
+     * @param cardssize number of cards in the box
+     */
+    private void drawDrawerStrip(Canvas canvas, int minimumI, int maximumI, int cardssize){
+        if(maximumI < minimumI){
+            return;
         }
+        int tileHeight = rescaleRectDrawer.height()-1;
+        if(tileHeight <= 0){
+            return;
+        }
+        int tiles = maximumI-minimumI+1;
+        if(drawerStrip == null || firstStripIndex != minimumI || lastStripIndex != maximumI
+                || stripCardsSize != cardssize || stripHeight != height){
+            if(drawerStrip == null || drawerStrip.getWidth() != tiles*height || drawerStrip.getHeight() != tileHeight){
+                drawerStrip = Bitmap.createBitmap(tiles*height, tileHeight, Bitmap.Config.ARGB_8888);
+            }
+            else{
+                drawerStrip.eraseColor(Color.TRANSPARENT);
+            }
+            Canvas stripCanvas = new Canvas(drawerStrip);
+            for(int i = minimumI; i<= maximumI; i++) {
+                int left = (i-minimumI)*height;
+                drawerTarget.set(left, 0, left+height, tileHeight);
+                int alpha = (cardssize == 0 || i<0) ? 255 : (255-( (i*120)/ cardssize));
+                transparentPaint.setAlpha(alpha);
+                stripCanvas.drawBitmap(smallDrawer, smallDrawerScr, drawerTarget, transparentPaint);
+            }
+            firstStripIndex = minimumI;
+            lastStripIndex = maximumI;
+            stripCardsSize = cardssize;
+            stripHeight = height;
+        }
+
+        canvas.drawBitmap(drawerStrip, (minimumI+1)*height-offset, height-1-tileHeight, null);
     }
 
     /**
@@ -772,7 +1132,7 @@ public class BoxView extends View {
     protected void drawCard(Card card, Rect dest, Canvas canvas, int index){
         canvas.drawBitmap(flaggedNoteBitmap, flaggedNoteBitmapSrc, dest, linePaint);
 
-        CardInfo cardInfo = cardsInfo.get(card);
+        CardInfo cardInfo = getCardInfo(card);
 
         int flagright = dest.left+flagOffset+flagWidth;
 
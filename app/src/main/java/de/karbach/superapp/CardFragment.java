@@ -94,7 +94,7 @@ public class CardFragment extends Fragment {
         Dictionary dict = DictionaryManagement.getInstance(getActivity()).getSelectedDictionary();
         Card card = null;
         if(dict != null){
-            PictureHelper ph = new PictureHelper(getActivity());
+            PictureHelper ph = PictureHelper.getInstance(getActivity());
             if(flag1 != null){
                 int resource = ph.getDrawableResourceForLanguage(dict.getBaseLanguage());
                 flag1.setImageResource(resource);
@@ -158,6 +158,9 @@ public class CardFragment extends Fragment {
                             Card oldCard = dict.getCardByLang1(lang1Key);
                             if(oldCard != null) {
                                 newCard.setBox(oldCard.getBox());
+                                newCard.setSchedule(oldCard.getDue(), oldCard.getInterval(),
+                                        oldCard.getRepetitions(), oldCard.getEaseFactor());
+                                dict.updateDue(newCard);
                                 dict.deleteCard(oldCard);
                             }
                         }
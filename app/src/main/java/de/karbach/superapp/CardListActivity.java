@@ -25,9 +25,11 @@ import android.app.SearchManager;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
 import android.widget.Toast;
 
 import java.io.Serializable;
@@ -95,6 +97,33 @@ public class CardListActivity extends SingleFragmentActivity {
             inflater.inflate(R.menu.main_menu_forlist, menu);
         }
 
+        //Filter the list while the user types
+        MenuItem searchItem = menu.findItem(R.id.menu_item_search);
+        View actionView = searchItem == null ? null : searchItem.getActionView();
+        if(actionView instanceof SearchView){
+            SearchView searchView = (SearchView) actionView;
+            searchView.setQueryHint(getString(R.string.search_hint));
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    CardListFragment cardlist = getMyFragment();
+                    if(cardlist != null){
+                        cardlist.search(query);
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    CardListFragment cardlist = getMyFragment();
+                    if(cardlist != null){
+                        cardlist.searchWhileTyping(newText);
+                    }
+                    return true;
+                }
+            });
+        }
+
         return true;
     }
 
@@ -106,7 +135,9 @@ public class CardListActivity extends SingleFragmentActivity {
         }
         switch(item.getItemId()){
             case R.id.menu_item_search:
-                boolean searching = onSearchRequested();
+                if(item.getActionView() == null) {
+                    boolean searching = onSearchRequested();
+                }
                 return true;
             case R.id.menu_item_clearsearch:
                 CardListFragment cardlist = getMyFragment();
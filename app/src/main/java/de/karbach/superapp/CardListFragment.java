@@ -18,27 +18,30 @@
 
 package de.karbach.superapp;
 
-import android.app.ListFragment;
+import android.app.Fragment;
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
-import android.widget.ListView;
 import android.widget.TextView;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.karbach.superapp.data.Card;
+import de.karbach.superapp.data.CardSortOrder;
 import de.karbach.superapp.data.Dictionary;
 import de.karbach.superapp.data.DictionaryManagement;
 
@@ -47,13 +50,13 @@ import de.karbach.superapp.data.DictionaryManagement;
  *
  * Retained.
  *
- * A listfragment, which shows a list of cards. Depending on the language of
+ * A fragment, which shows a list of cards in a RecyclerView. Depending on the language of
  * the selected dictionary other flags are shown next to the words. Mainly
  * the German word and the corresponding translation is shown in each row.
  * By tapping on a card entry, the CardActivity is called for editing the card.
  * The card list can be sorted and filtered.
  */
-public class CardListFragment extends ListFragment{
+public class CardListFragment extends Fragment {
     /**
      * Parameter name for the parameter holding all cards to show.
      * This fragment simply needs a list of cards to show. It does not
@@ -69,9 +72,70 @@ public class CardListFragment extends ListFragment{
     public static final int CARDCHANGERESULT = 1;
 
     /**
-     * Generate views for all cards in the list
+     * Immutable snapshot of a card as shown in the list. The diff of two lists
+     * of rows is computed in the background, the version tells, if the card was
+     * edited in between and its row must be bound again.
      */
-    public class CardAdapter extends ArrayAdapter<Card> {
+    static class CardRow {
+        /**
+         * The shown card, might be null
+         */
+        public final Card card;
+        /**
+         * Version of the card, when this row was created
+         */
+        public final int version;
+
+        public CardRow(Card card){
+            this.card = card;
+            this.version = card == null ? 0 : card.getVersion();
+        }
+    }
+
+    /**
+     * Compares rows by card identity and card version
+     */
+    private static final DiffUtil.ItemCallback<CardRow> ROWDIFF = new DiffUtil.ItemCallback<CardRow>() {
+        @Override
+        public boolean areItemsTheSame(CardRow oldRow, CardRow newRow) {
+            return oldRow.card == newRow.card;
+        }
+
+        @Override
+        public boolean areContentsTheSame(CardRow oldRow, CardRow newRow) {
+            return oldRow.version == newRow.version;
+        }
+    };
+
+    /**
+     * Holds the views of one row, so that they are looked up only once
+     */
+    private class CardViewHolder extends RecyclerView.ViewHolder {
+        public TextView langtext1;
+        public TextView langtext2;
+        public ImageView flag1;
+        public ImageView flag2;
+        /**
+         * Flag resources currently shown, 0 if not yet set
+         */
+        public int flagResource1 = 0;
+        public int flagResource2 = 0;
+
+        public CardViewHolder(View itemView) {
+            super(itemView);
+            langtext1 = (TextView) itemView.findViewById(R.id.carditem_lang1);
+            langtext2 = (TextView) itemView.findViewById(R.id.carditem_lang2);
+            flag1 = (ImageView) itemView.findViewById(R.id.carditem_flag1);
+            flag2 = (ImageView) itemView.findViewById(R.id.carditem_flag2);
+        }
+    }
+
+    /**
+     * Generate views for all cards in the list.
+     * The shown list is replaced with submitList, the adapter computes the difference
+     * to the previous list on a background thread and only rebinds changed rows.
+     */
+    public class CardAdapter extends ListAdapter<CardRow, CardViewHolder> {
 
         public String getLang1() {
             return lang1;
@@ -79,6 +143,7 @@ public class CardListFragment extends ListFragment{
 
         public void setLang1(String lang1) {
             this.lang1 = lang1;
+            updateFlagResources();
         }
 
         public String getLang2() {
@@ -87,6 +152,7 @@ public class CardListFragment extends ListFragment{
 
         public void setLang2(String lang2) {
             this.lang2 = lang2;
+            updateFlagResources();
         }
         public void setBaseLanguage(String baseLanguage) {
             this.baseLanguage = baseLanguage;
@@ -101,56 +167,135 @@ public class CardListFragment extends ListFragment{
         private String lang1 = getString(R.string.lang_german);
         private String lang2 = getString(R.string.lang_swedish);
 
-        public CardAdapter(List<Card> cards) {
-            super(getActivity(), 0,  cards);
+        /**
+         * Flag resources for lang1 and lang2, resolved once per language change
+         */
+        private int flagResource1;
+        private int flagResource2;
+
+        public CardAdapter() {
+            super(ROWDIFF);
+            setHasStableIds(true);
+            updateFlagResources();
+        }
+
+        /**
+         * Resolve the flags for the current languages
+         */
+        private void updateFlagResources(){
+            PictureHelper ph = PictureHelper.getInstance(getActivity());
+            flagResource1 = ph.getDrawableResourceForLanguage(lang1);
+            flagResource2 = ph.getDrawableResourceForLanguage(lang2);
+        }
+
+        /**
+         * @param position position in the shown list
+         * @return the card shown at this position
+         */
+        public Card getCard(int position){
+            return getItem(position).card;
+        }
+
+        /**
+         * Show the given cards. The change is applied as soon as the difference to
+         * the currently shown list is computed.
+         * @param cards the cards to show, the list is copied
+         */
+        public void showCards(List<Card> cards){
+            List<CardRow> rows = new ArrayList<CardRow>(cards.size());
+            for(Card card: cards){
+                rows.add(new CardRow(card));
+            }
+            submitList(rows);
         }
 
         @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            if(convertView == null){
-                convertView = getActivity().getLayoutInflater().inflate(R.layout.card_item, parent, false);
+        public long getItemId(int position) {
+            Card card = getCard(position);
+            if(card == null){
+                return RecyclerView.NO_ID;
             }
+            return card.getRuntimeId();
+        }
 
-            TextView langtext1 = (TextView) convertView.findViewById(R.id.carditem_lang1);
-            TextView langtext2 = (TextView) convertView.findViewById(R.id.carditem_lang2);
+        @Override
+        public CardViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = getActivity().getLayoutInflater().inflate(R.layout.card_item, parent, false);
+            final CardViewHolder holder = new CardViewHolder(view);
+
+            view.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = holder.getAdapterPosition();
+                    if(position != RecyclerView.NO_POSITION){
+                        editCard(getCard(position));
+                    }
+                }
+            });
+            view.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    int position = holder.getAdapterPosition();
+                    contextMenuCard = position == RecyclerView.NO_POSITION ? null : getCard(position);
+                    //Not consumed, so that the context menu is shown
+                    return false;
+                }
+            });
+            registerForContextMenu(view);
 
-            ImageView flag1 = (ImageView) convertView.findViewById(R.id.carditem_flag1);
-            ImageView flag2 = (ImageView) convertView.findViewById(R.id.carditem_flag2);
+            return holder;
+        }
 
-            PictureHelper ph = new PictureHelper(getActivity());
-            int r1 = ph.getDrawableResourceForLanguage(lang1);
-            int r2 = ph.getDrawableResourceForLanguage(lang2);
-            if(flag1 != null) {
-                flag1.setImageResource(r1);
+        @Override
+        public void onBindViewHolder(CardViewHolder holder, int position) {
+            if(holder.flag1 != null && holder.flagResource1 != flagResource1) {
+                holder.flag1.setImageResource(flagResource1);
+                holder.flagResource1 = flagResource1;
             }
-            if(flag2 != null) {
-                flag2.setImageResource(r2);
+            if(holder.flag2 != null && holder.flagResource2 != flagResource2) {
+                holder.flag2.setImageResource(flagResource2);
+                holder.flagResource2 = flagResource2;
             }
 
-            Card c = getItem(position);
+            Card c = getCard(position);
+            String word1 = c == null ? "" : c.getLang1();
+            String word2 = c == null ? "" : c.getLang2();
 
-            if(langtext1 != null) {
+            if(holder.langtext1 != null) {
                 if(lang1 != null && lang1.equals(baseLanguage)) {
-                    langtext1.setText(c.getLang1());
+                    holder.langtext1.setText(word1);
                 }
                 else {
-                    langtext1.setText(c.getLang2());
+                    holder.langtext1.setText(word2);
                 }
             }
 
-            if(langtext2 != null) {
+            if(holder.langtext2 != null) {
                 if(lang2 != null && lang2.equals(baseLanguage)) {
-                    langtext2.setText(c.getLang1());
+                    holder.langtext2.setText(word1);
                 }
                 else {
-                    langtext2.setText(c.getLang2());
+                    holder.langtext2.setText(word2);
                 }
             }
-
-            return convertView;
         }
     }
 
+    /**
+     * Shows the cards of cardsAfterSearch
+     */
+    private CardAdapter adapter;
+
+    /**
+     * The list view, null while no view is created
+     */
+    private RecyclerView recyclerView;
+
+    /**
+     * Card, for which the context menu was opened last
+     */
+    private Card contextMenuCard = null;
+
     /**
      * The entire original list of cards to be shown.
      */
@@ -184,23 +329,63 @@ public class CardListFragment extends ListFragment{
         language1 = dict.getBaseLanguage();
         language2 = dict.getLanguage();
 
-        CardAdapter adapter = new CardAdapter(cardsAfterSearch);
+        adapter = new CardAdapter();
         adapter.setLang1(language1);
         adapter.setLang2(language2);
         adapter.setBaseLanguage(dict.getBaseLanguage());
+        adapter.showCards(cardsAfterSearch);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
 
-        setListAdapter(adapter);
+        backgroundSearch.shutdown();
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View result = super.onCreateView(inflater, container, savedInstanceState);
-        ListView listview = (ListView) result.findViewById(android.R.id.list);
-        registerForContextMenu(listview);
+        View result = inflater.inflate(R.layout.cardlist_fragment, container, false);
+        recyclerView = (RecyclerView) result.findViewById(R.id.cardlist_recycler);
+        recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        recyclerView.addItemDecoration(new DividerItemDecoration(getActivity(), DividerItemDecoration.VERTICAL));
+        recyclerView.setAdapter(adapter);
 
         return result;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        //The adapter is retained, it must not keep the old view
+        recyclerView.setAdapter(null);
+        recyclerView = null;
+    }
+
+    /**
+     * @return adapter showing the cards
+     */
+    public CardAdapter getCardAdapter(){
+        return adapter;
+    }
+
+    /**
+     * @return the view showing the list of cards, null if no view is created
+     */
+    public RecyclerView getRecyclerView(){
+        return recyclerView;
+    }
+
+    /**
+     * Show all cards of cardsAfterSearch. Only rows of changed cards are bound again.
+     */
+    private void showCards(){
+        if(adapter != null) {
+            adapter.showCards(cardsAfterSearch);
+        }
+    }
+
     @Override
     public void onCreateContextMenu(ContextMenu menu, View v, ContextMenu.ContextMenuInfo menuInfo) {
         super.onCreateContextMenu(menu, v, menuInfo);
@@ -210,34 +395,49 @@ public class CardListFragment extends ListFragment{
 
     @Override
     public boolean onContextItemSelected(MenuItem item) {
-        AdapterView.AdapterContextMenuInfo info = (AdapterView.AdapterContextMenuInfo)item.getMenuInfo();
-        int position = info == null ? 0 : info.position;
-
         if(item.getItemId() == R.id.menu_card_delete){
-            Card card = cardsAfterSearch.get(position);
-
-            if(card != null) {
-                DictionaryManagement dm = DictionaryManagement.getInstance(getActivity());
-                Dictionary dict = dm.getSelectedDictionary();
-
-                dict.deleteCard(card);
-                cards.remove(card);
-                cardsAfterSearch.remove(card);
+            Card card = contextMenuCard;
+            contextMenuCard = null;
+            //Only the card pressed by the user is deleted
+            if(card == null){
+                return false;
+            }
 
-                CardAdapter adapter = (CardAdapter)getListAdapter();
-                adapter.notifyDataSetChanged();
+            DictionaryManagement dm = DictionaryManagement.getInstance(getActivity());
+            Dictionary dict = dm.getSelectedDictionary();
+
+            dict.deleteCard(card);
+            cards.remove(card);
+            cardsAfterSearch.remove(card);
+            sortOrderLang1.forget(card);
+            sortOrderLang2.forget(card);
+            backgroundSearch.invalidate();
+            if(backgroundSearch.isRunning()){
+                search(lastSearch);
             }
 
+            showCards();
+            return true;
         }
 
         return super.onContextItemSelected(item);
     }
 
-    @Override
-    public void onListItemClick(ListView l, View v, int position, long id) {
-        super.onListItemClick(l, v, position, id);
+    /**
+     * Open the card at the given position of the currently shown cards for editing
+     * @param position position in the list of shown cards
+     */
+    public void onCardClick(int position){
+        if(position >= 0 && position < cardsAfterSearch.size()) {
+            editCard(cardsAfterSearch.get(position));
+        }
+    }
 
-        Card card = cardsAfterSearch.get(position);
+    /**
+     * Open the card for editing
+     * @param card the tapped card
+     */
+    protected void editCard(Card card){
         if(card != null){
             String lang1Key = card.getLang1();
             Intent intent  = new Intent(getActivity(), CardActivity.class);
@@ -248,23 +448,43 @@ public class CardListFragment extends ListFragment{
 
     /**
      * Set the cards to show. cardsAfterSearch is updated, too.
+     * If the cards are sorted, the sorted order is updated incrementally,
+     * so that a single added or edited card is inserted by binary search.
      * @param newcards
      */
     public void updateCards(List<Card> newcards){
-        this.cards.clear();
-        this.cards.addAll(newcards);
-        cardsAfterSearch.clear();
-        cardsAfterSearch.addAll(newcards);
+        if(lastSort != null){
+            getSortOrder(lastSort).update(this.cards, newcards);
+        }
+        else {
+            this.cards.clear();
+            this.cards.addAll(newcards);
+        }
+
+        backgroundSearch.invalidate();
+        if(lastSearch != null && lastSearch.length() > 0){
+            //Until the new result arrives, at least hide removed cards
+            Map<Card, Boolean> available = new IdentityHashMap<Card, Boolean>();
+            for(Card card: this.cards){
+                available.put(card, Boolean.TRUE);
+            }
+            List<Card> stillAvailable = new ArrayList<Card>();
+            for(Card card: cardsAfterSearch){
+                if(available.containsKey(card)){
+                    stillAvailable.add(card);
+                }
+            }
+            cardsAfterSearch.clear();
+            cardsAfterSearch.addAll(stillAvailable);
 
-        if(lastSearch != null){
             search(lastSearch);
         }
-        if(lastSort != null){
-            sortByLanguage(lastSort);
+        else {
+            cardsAfterSearch.clear();
+            cardsAfterSearch.addAll(this.cards);
         }
 
-        CardAdapter adapter = (CardAdapter)getListAdapter();
-        adapter.notifyDataSetChanged();
+        showCards();
     }
 
     /**
@@ -275,31 +495,60 @@ public class CardListFragment extends ListFragment{
      */
     private String lastSearch = null;
 
+    /**
+     * Filters the cards on a worker thread and publishes the results into cardsAfterSearch
+     */
+    private BackgroundCardSearch backgroundSearch = new BackgroundCardSearch(new BackgroundCardSearch.ResultListener() {
+        @Override
+        public void onSearchResults(String search, List<Card> found, boolean first, boolean finished) {
+            if(first){
+                cardsAfterSearch.clear();
+            }
+            cardsAfterSearch.addAll(found);
+
+            showCards();
+        }
+    });
+
     /**
      * Filter cards by the search string.
+     * If the search string uses fields, quotes or regular expressions, it is compiled as
+     * CardQuery, e.g. box:>=3 type:noun "word". Otherwise, or if it is no valid query,
+     * a simple text search is done.
+     * Filtering runs in the background, results are shown as soon as they are available.
      * @param search the search string to match for
      */
     public void search(String search){
+        search(search, 0);
+    }
+
+    /**
+     * Same as search, but delays the search, so that it can be called for every typed character.
+     * Each call cancels the previous search.
+     * @param search the search string to match for
+     */
+    public void searchWhileTyping(String search){
+        search(search, BackgroundCardSearch.DEBOUNCEMILLIS);
+    }
+
+    /**
+     * Start filtering cards by the search string.
+     * @param search the search string to match for
+     * @param delay delay in ms, before the search starts
+     */
+    protected void search(String search, long delay){
         lastSearch = search;
-        cardsAfterSearch.clear();
         if(search == null || search.equals("")){//Clear search
+            backgroundSearch.cancel();
+            cardsAfterSearch.clear();
             cardsAfterSearch.addAll(cards);
+
+            showCards();
         }
         else{
-            String simpleSearch = Card.toSimpleString(search);
-            for(Card card: cards){
-                if(card == null){
-                    continue;
-                }
-                if(card.matchesSearch(simpleSearch)){
-                    cardsAfterSearch.add(card);
-                }
-            }
+            backgroundSearch.search(search, cards, delay);
         }
 
-        CardAdapter adapter = (CardAdapter)getListAdapter();
-        adapter.notifyDataSetChanged();
-
         getActivity().setTitle(search);
     }
 
@@ -309,63 +558,44 @@ public class CardListFragment extends ListFragment{
      */
     private String lastSort = null;
 
+    /**
+     * Sort order by base language, keeps cached sort keys for the cards
+     */
+    private CardSortOrder sortOrderLang1 = new CardSortOrder(true);
+    /**
+     * Sort order by the second language, keeps cached sort keys for the cards
+     */
+    private CardSortOrder sortOrderLang2 = new CardSortOrder(false);
+
+    /**
+     * @param language Language by which to sort the cards
+     * @return sort order for this language
+     */
+    private CardSortOrder getSortOrder(String language){
+        if(language.equals(adapter.getBaseLanguage())){
+            return sortOrderLang1;
+        }
+        return sortOrderLang2;
+    }
+
     /**
      * Sort cards shown by the given language.
      * @param language Language by which to sort the cards
      */
     public void sortByLanguage(String language){
         lastSort = language;
-        Comparator<Card> lang1Comparator = new Comparator<Card>() {
-            @Override
-            public int compare(Card lhs, Card rhs) {
-                if(lhs == null){
-                    return -1;
-                }
-                if(rhs == null){
-                    return 1;
-                }
-                if(lhs.getLang1() == null || "".equals(lhs.getLang1())){
-                    return -1;
-                }
-                String lang1 = Card.toSimpleString(lhs.getLang1());
-                String lang2 = Card.toSimpleString(rhs.getLang1());
-                return lang1.compareTo(lang2);
-            }
-        };
-
-        Comparator<Card> lang2Comparator = new Comparator<Card>() {
-            @Override
-            public int compare(Card lhs, Card rhs) {
-                if(lhs == null){
-                    return -1;
-                }
-                if(rhs == null){
-                    return 1;
-                }
-                if(lhs.getLang1() == null || "".equals(lhs.getLang1())){
-                    return -1;
-                }
-                String lang1 = Card.toSimpleString(lhs.getLang2());
-                String lang2 = Card.toSimpleString(rhs.getLang2());
-                if(lang1 == null || "".equals(lang1)){
-                    return -1;
-                }
-                return lang1.compareTo(lang2);
-            }
-        };
 
-        CardAdapter adapter = (CardAdapter)getListAdapter();
+        CardSortOrder sortOrder = getSortOrder(language);
+        sortOrder.sort(cards);
+        sortOrder.sort(cardsAfterSearch);
 
-        if(language.equals(adapter.getBaseLanguage())){
-            Collections.sort(cards, lang1Comparator);
-            Collections.sort(cardsAfterSearch, lang1Comparator);
-        }
-        else{
-            Collections.sort(cards, lang2Comparator);
-            Collections.sort(cardsAfterSearch, lang2Comparator);
+        //Results are published in the order of cards
+        backgroundSearch.invalidate();
+        if(backgroundSearch.isRunning()){
+            search(lastSearch);
         }
 
-        adapter.notifyDataSetChanged();
+        showCards();
     }
 
     /**
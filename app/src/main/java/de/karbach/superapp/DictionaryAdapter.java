@@ -66,7 +66,7 @@ public class DictionaryAdapter extends BaseAdapter {
         Dictionary dict = dm.getDictionary(nameValue);
 
         if(dict != null) {
-            PictureHelper ph = new PictureHelper(activity);
+            PictureHelper ph = PictureHelper.getInstance(activity);
             int r1 = ph.getDrawableResourceForLanguage(dict.getBaseLanguage());
             if (flag1 != null) {
                 flag1.setImageResource(r1);
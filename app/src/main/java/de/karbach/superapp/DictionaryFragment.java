@@ -53,6 +53,7 @@ import java.util.Set;
 import de.karbach.superapp.data.Card;
 import de.karbach.superapp.data.Dictionary;
 import de.karbach.superapp.data.DictionaryManagement;
+import de.karbach.superapp.data.SessionOrder;
 
 /**
  * Created by Carsten on 29.12.2015.
@@ -72,6 +73,17 @@ public class DictionaryFragment extends Fragment{
      */
     public static List<String> languages;
 
+    /**
+     * Scheduler names of the dictionary for the entries of the scheduler spinner (array schedulerNames)
+     */
+    private static final String[] SCHEDULERS = new String[]{Dictionary.SCHEDULERLEITNER, Dictionary.SCHEDULERSM2};
+
+    /**
+     * Strategies for the entries of the order spinner (array sessionOrderNames)
+     */
+    private static final SessionOrder.Strategy[] ORDERS = new SessionOrder.Strategy[]{SessionOrder.Strategy.RANDOM,
+            SessionOrder.Strategy.INTERLEAVEBOXES, SessionOrder.Strategy.HARDESTFIRST, SessionOrder.Strategy.SPREADSIMILAR};
+
     /**
      * Check if user is currently renaming the dictionary
      * Compares selected dictionary name with the current name in dictionary_name edit text
@@ -203,6 +215,26 @@ public class DictionaryFragment extends Fragment{
                 break;
             }
         }
+
+        final Spinner schedulerSpinner = view.findViewById(R.id.schedulerspinner);
+        if(currentDict != null) {
+            for (int i = 0; i < SCHEDULERS.length; i++) {
+                if (SCHEDULERS[i].equals(currentDict.getSchedulerName())) {
+                    schedulerSpinner.setSelection(i);
+                    break;
+                }
+            }
+        }
+
+        final Spinner orderSpinner = view.findViewById(R.id.orderspinner);
+        if(currentDict != null) {
+            for (int i = 0; i < ORDERS.length; i++) {
+                if (ORDERS[i] == currentDict.getSessionOrder()) {
+                    orderSpinner.setSelection(i);
+                    break;
+                }
+            }
+        }
     }
 
     /**
@@ -249,7 +281,7 @@ public class DictionaryFragment extends Fragment{
             ImageView flag = (ImageView) convertView.findViewById(R.id.flagview);
 
             String language = flags.get(position);
-            PictureHelper ph = new PictureHelper(getActivity());
+            PictureHelper ph = PictureHelper.getInstance(getActivity());
             int r1 = ph.getDrawableResourceForLanguage(language);
             if(flag != null) {
                 flag.setImageResource(r1);
@@ -382,9 +414,13 @@ public class DictionaryFragment extends Fragment{
                 }
 
                 int boxcount = Integer.valueOf((String) boxcountSpinner.getSelectedItem());
+                Spinner schedulerSpinner = getView().findViewById(R.id.schedulerspinner);
+                Spinner orderSpinner = getView().findViewById(R.id.orderspinner);
                 dict.setLanguage(language);
                 dict.setBaseLanguage(baselanguage);
                 dict.setBoxcount(boxcount);
+                dict.setSchedulerName(SCHEDULERS[Math.max(0, schedulerSpinner.getSelectedItemPosition())]);
+                dict.setSessionOrder(ORDERS[Math.max(0, orderSpinner.getSelectedItemPosition())]);
                 dict.save(getActivity());
 
                 String toast = getString(R.string.toast_new_dict_saved, newDict);
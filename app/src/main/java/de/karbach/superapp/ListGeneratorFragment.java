@@ -20,7 +20,9 @@ package de.karbach.superapp;
 
 import android.app.Fragment;
 import android.app.ListActivity;
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.view.LayoutInflater;
@@ -28,18 +30,23 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.karbach.superapp.data.Card;
+import de.karbach.superapp.data.CardQuery;
 import de.karbach.superapp.data.Dictionary;
 import de.karbach.superapp.data.DictionaryManagement;
+import de.karbach.superapp.data.MultiPatternMatcher;
 
 /**
  * This fragment allows to select cards from the entire dictionary.
- * The cards can be selected by special attributes.
+ * The cards can be selected by special attributes, by predefined or
+ * user defined pattern sets and by a query (see CardQuery).
  * The fragment then simply calls the card list fragment to
  * display the cards found.
  */
@@ -59,12 +66,27 @@ public class ListGeneratorFragment extends Fragment {
     }
 
     /**
-     * Get all cards, which match at least one of the given match strings.
-     * @param matches used as search filter
-     * @return cards, which match one of the matches filters
+     * Key in preferences to store the user defined patterns
      */
-    private ArrayList<Card> getFilteredDictionary(List<String> matches){
-        if(matches == null ||matches.size()==0){
+    private static final String customPatternsKey = "de.karbach.superapp.ListGeneratorFragment.customPatterns";
+
+    /**
+     * Delimiter for user defined patterns, e.g. "(-ar, (-or"
+     */
+    private static final String customPatternsDelimiter = ",";
+
+    /**
+     * Get all cards, which match at least one of the given patterns and the query.
+     * The patterns are compiled into one MultiPatternMatcher, so that every card
+     * is scanned only once independent of the number of patterns.
+     * @param patterns used as search filter
+     * @param query compiled query, which all cards must match, null or empty query for no restriction
+     * @return cards, which match one of the patterns and the query
+     */
+    private ArrayList<Card> getFilteredDictionary(List<String> patterns, CardQuery query){
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        boolean noQuery = query == null || query.isEmpty();
+        if(matcher.isEmpty() && noQuery){
             return new ArrayList<Card>();
         }
 
@@ -72,21 +94,42 @@ public class ListGeneratorFragment extends Fragment {
         if(all == null){
             return null;
         }
+        if(! noQuery){
+            all = query.filter(all);
+        }
+        if(matcher.isEmpty()){
+            return all;
+        }
 
-        ArrayList<Card> result = new ArrayList<Card>();
+        return matcher.filter(all);
+    }
 
-        for(Card c: all){
-            for(String filter: matches) {
-                if (c.matchesSearch(filter)) {
-                    result.add(c);
-                    break;
-                }
+    /**
+     * Split user defined patterns.
+     * @param customPatterns patterns separated by customPatternsDelimiter
+     * @return list of trimmed, non empty patterns
+     */
+    protected static List<String> splitCustomPatterns(String customPatterns){
+        List<String> result = new ArrayList<String>();
+        if(customPatterns == null){
+            return result;
+        }
+        for(String pattern: customPatterns.split(customPatternsDelimiter)){
+            pattern = pattern.trim();
+            if(pattern.length() > 0){
+                result.add(pattern);
             }
         }
-
         return result;
     }
 
+    /**
+     * @return preferences, in which the user defined patterns are stored
+     */
+    private SharedPreferences getPreferences(){
+        return getActivity().getSharedPreferences(ListGeneratorFragment.class.getName(), Context.MODE_PRIVATE);
+    }
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -94,6 +137,10 @@ public class ListGeneratorFragment extends Fragment {
 
         final CheckBox ettCheck = (CheckBox) result.findViewById(R.id.ettCheck);
         final CheckBox enCheck = (CheckBox) result.findViewById(R.id.enCheck);
+        final EditText queryText = (EditText) result.findViewById(R.id.queryText);
+        final EditText patternsText = (EditText) result.findViewById(R.id.patternsText);
+
+        patternsText.setText(getPreferences().getString(customPatternsKey, ""));
 
         Button showListButton = (Button) result.findViewById(R.id.button_showlist);
         showListButton.setOnClickListener(new View.OnClickListener() {
@@ -102,19 +149,22 @@ public class ListGeneratorFragment extends Fragment {
 
                 ArrayList<String> matches = new ArrayList<String>();
                 if(ettCheck.isChecked()){
-                    matches.add("(-et");
-                    matches.add("(-t");
-                    matches.add("( -et");
-                    matches.add("( -t");
+                    matches.addAll(Arrays.asList(getResources().getStringArray(R.array.pattern_set_ett)));
                 }
                 if(enCheck.isChecked()){
-                    matches.add("(-en");
-                    matches.add("(-n");
-                    matches.add("( -en");
-                    matches.add("( -n");
+                    matches.addAll(Arrays.asList(getResources().getStringArray(R.array.pattern_set_en)));
+                }
+                String customPatterns = patternsText.getText().toString();
+                matches.addAll(splitCustomPatterns(customPatterns));
+                getPreferences().edit().putString(customPatternsKey, customPatterns).apply();
+
+                CardQuery query = CardQuery.parse(queryText.getText().toString());
+                if(query == null){
+                    Toast.makeText(getActivity(), getString(R.string.toast_invalid_query), Toast.LENGTH_SHORT).show();
+                    return;
                 }
 
-                ArrayList<Card> selectedCards = getFilteredDictionary(matches);
+                ArrayList<Card> selectedCards = getFilteredDictionary(matches, query);
                 if(selectedCards == null || selectedCards.size() == 0){
                     Toast.makeText(getActivity(), getString(R.string.toast_nocards_found), Toast.LENGTH_SHORT).show();
                     return;
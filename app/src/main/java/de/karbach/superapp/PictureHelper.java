@@ -19,12 +19,11 @@
 package de.karbach.superapp;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
-import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -32,25 +31,30 @@ import java.util.Map;
  *
  * A helper class for all functions related to pictures.
  * Especially, helps to map languages to their flag images.
+ *
+ * The language resources are parsed once into hash maps. Use getInstance to share
+ * these maps within the process instead of parsing the resources for each view.
  */
 public class PictureHelper {
 
     /**
-     * all available language IDs in German
+     * Shared instance, created on first use
+     */
+    private static PictureHelper instance;
+    /**
+     * Locale, for which the display names of instance were loaded
      */
-    private List<String> allLanguages;
+    private static Locale instanceLocale;
+
     /**
-     * Resource IDs for flags to display.
-     * allFlags[0] corresponds to language allLanguages[0]
-     * allFlags[1] corresponds to language allLanguages[1]
-     * ...
+     * Maps language IDs in German to resource IDs of their flags
      */
-    private List<Integer> allFlags;
+    private Map<String, Integer> flags = new HashMap<String, Integer>();
     /**
-     * Language to display to the user according to localization.
+     * Maps language IDs in German to the language to display to the user according to localization.
      * E.g. this contains German for English localization, but Deutsch for German localization
      */
-    private List<String> allDisplayLanguages;
+    private Map<String, String> displayLanguages = new HashMap<String, String>();
 
     /**
      * If no display name is found for a language, this name is returned
@@ -59,14 +63,58 @@ public class PictureHelper {
     private String defaultDisplayLanguage;
 
     public PictureHelper(Context context){
-        allLanguages = Arrays.asList( context.getResources().getStringArray(R.array.all_languages_array) );
-        allDisplayLanguages = Arrays.asList( context.getResources().getStringArray(R.array.all_languages_display_array) );
-        TypedArray flagarray = context.getResources().obtainTypedArray(R.array.flags);
-        allFlags = new ArrayList<Integer>();
-        for(int i = 0; i< flagarray.length(); i++){
-            allFlags.add(flagarray.getResourceId(i, R.drawable.flag_german));
+        Resources resources = context.getResources();
+        String[] allLanguages = resources.getStringArray(R.array.all_languages_array);
+        String[] allDisplayLanguages = resources.getStringArray(R.array.all_languages_display_array);
+        TypedArray flagarray = resources.obtainTypedArray(R.array.flags);
+        for(int i = 0; i< allLanguages.length; i++){
+            if(flags.containsKey(allLanguages[i])){
+                continue;
+            }
+            if(i < flagarray.length()) {
+                flags.put(allLanguages[i], flagarray.getResourceId(i, R.drawable.flag_german));
+            }
+            if(i < allDisplayLanguages.length) {
+                displayLanguages.put(allLanguages[i], allDisplayLanguages[i]);
+            }
+        }
+        flagarray.recycle();
+        defaultDisplayLanguage = resources.getString(R.string.lang_german);
+    }
+
+    /**
+     * Get the shared instance. It is created on first access and recreated,
+     * if the locale changed, so that display names fit to the localization.
+     * @param context any context of the app
+     * @return process wide instance
+     */
+    public static synchronized PictureHelper getInstance(Context context){
+        Locale locale = context.getResources().getConfiguration().locale;
+        if(instance == null || (locale != null && ! locale.equals(instanceLocale))){
+            instance = new PictureHelper(context);
+            instanceLocale = locale;
+        }
+        return instance;
+    }
+
+    /**
+     * Create the shared instance in the background, so that the first list or card
+     * shown does not have to parse the resources. Call this on app start.
+     * @param context any context of the app
+     */
+    public static void warmUp(Context context){
+        final Context appContext = context.getApplicationContext();
+        if(appContext == null){
+            return;
         }
-        defaultDisplayLanguage = context.getResources().getString(R.string.lang_german);
+        Thread warmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                getInstance(appContext);
+            }
+        });
+        warmUp.setPriority(Thread.MIN_PRIORITY);
+        warmUp.start();
     }
 
     /**
@@ -75,11 +123,11 @@ public class PictureHelper {
      * @return resource ID for flag to draw for a language
      */
     public int getDrawableResourceForLanguage(String language){
-        int index = allLanguages.indexOf(language);
-        if(index == -1) {
+        Integer result = flags.get(language);
+        if(result == null) {
             return R.drawable.flag_german;
         }
-        return allFlags.get(index);
+        return result;
     }
 
     /**
@@ -88,11 +136,11 @@ public class PictureHelper {
      * @return corresponding localized display text for language
      */
     public String getDisplaynameForLanguage(String language){
-        int index = allLanguages.indexOf(language);
-        if(index == -1) {
+        String result = displayLanguages.get(language);
+        if(result == null) {
             return defaultDisplayLanguage;
         }
-        return allDisplayLanguages.get(index);
+        return result;
     }
 
 }
@@ -24,7 +24,8 @@ import de.karbach.superapp.data.DictionaryManagement;
 /**
  * Created by Carsten on 05.01.2016.
  *
- * Adds function to save the selected dictionary to file on every onPause call.
+ * Adds function to save the selected dictionary to file on every onPause call,
+ * if it was changed since it was saved or loaded.
  * Use this superclass for the activity, if the activity can modify the cards.
  * Examples for modifying activities are CardActivity and TestActivity.
  */
@@ -36,7 +37,7 @@ public abstract class SingleFragmentSaveOnPauseActivity extends SingleFragmentAc
 
         DictionaryManagement dm = DictionaryManagement.getInstance(this);
         Dictionary dict = dm.getSelectedDictionary();
-        if(dict != null) {
+        if(dict != null && dict.isDirty()) {
             dict.save(this);
         }
     }
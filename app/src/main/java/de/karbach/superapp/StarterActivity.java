@@ -119,6 +119,9 @@ public class StarterActivity extends SingleFragmentActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        //Parse the language resources, before the first flags are needed
+        PictureHelper.warmUp(this);
+
         handleViewIntent();
     }
 
@@ -55,6 +55,31 @@ public class TestActivity extends SingleFragmentSaveOnPauseActivity {
      */
     public static final String PARAMDIRECTCARDS = "de.karbach.superapp.TestActivity.DIRECTCARDS";
 
+    /**
+     * Name of a SessionOrder.Strategy for ordering the tested cards (String), random order if not set
+     */
+    public static final String PARAMORDER = "de.karbach.superapp.TestActivity.ORDER";
+
+    /**
+     * Number of cards for a mixed session over all boxes (int), see TestFragment.PARAMMIXEDLENGTH
+     */
+    public static final String PARAMMIXEDLENGTH = "de.karbach.superapp.TestActivity.MIXEDLENGTH";
+
+    /**
+     * Box weights for a mixed session (double[]), default weights prefer lower boxes
+     */
+    public static final String PARAMBOXWEIGHTS = "de.karbach.superapp.TestActivity.BOXWEIGHTS";
+
+    /**
+     * If true, the answers are chosen from a few options (boolean), see TestFragment.PARAMMULTIPLECHOICE
+     */
+    public static final String PARAMMULTIPLECHOICE = "de.karbach.superapp.TestActivity.MULTIPLECHOICE";
+
+    /**
+     * Maximum number of cards for a session of the cards due today (int), see Dictionary.getDueCards
+     */
+    public static final String PARAMDUECOUNT = "de.karbach.superapp.TestActivity.DUECOUNT";
+
     @Override
     protected Fragment createFragment() {
 
@@ -64,7 +89,17 @@ public class TestActivity extends SingleFragmentSaveOnPauseActivity {
 
         Boolean realTest = getIntent().getBooleanExtra(PARAMREALTEST, false);
 
-        if(testCards == null) {
+        int mixedLength = getIntent().getIntExtra(PARAMMIXEDLENGTH, 0);
+
+        int dueCount = getIntent().getIntExtra(PARAMDUECOUNT, 0);
+
+        if(testCards == null && dueCount > 0){
+            Dictionary dict = DictionaryManagement.getInstance(this).getSelectedDictionary();
+            long endOfDay = Dictionary.getEndOfDay(System.currentTimeMillis());
+            testCards = new ArrayList<Card>(dict.getDueCards(dueCount, endOfDay));
+        }
+
+        if(testCards == null && mixedLength <= 0) {
             int box = getIntent().getIntExtra(PARAMBOX, 1);
             DictionaryManagement dm = DictionaryManagement.getInstance(this);
             Dictionary dict = dm.getSelectedDictionary();
@@ -77,6 +112,13 @@ public class TestActivity extends SingleFragmentSaveOnPauseActivity {
         arguments.putSerializable(TestFragment.PARAMTESTCARDS, testCards);
         arguments.putBoolean(TestFragment.PARAMISREALTEST, realTest);
         arguments.putBoolean(TestFragment.PARAMASKFORLANG2, askForLang2);
+        arguments.putString(TestFragment.PARAMORDER, getIntent().getStringExtra(PARAMORDER));
+        arguments.putBoolean(TestFragment.PARAMMULTIPLECHOICE, getIntent().getBooleanExtra(PARAMMULTIPLECHOICE, false));
+        if(mixedLength > 0){
+            //Cards are drawn by the fragment, no list of all candidates is needed
+            arguments.putInt(TestFragment.PARAMMIXEDLENGTH, mixedLength);
+            arguments.putDoubleArray(TestFragment.PARAMBOXWEIGHTS, getIntent().getDoubleArrayExtra(PARAMBOXWEIGHTS));
+        }
 
         TestFragment result = new TestFragment();
         result.setArguments(arguments);
@@ -40,11 +40,22 @@ import android.widget.Toast;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
+import de.karbach.superapp.data.AnswerMatcher;
+import de.karbach.superapp.data.BoxSampler;
+import de.karbach.superapp.data.BoxTransitions;
 import de.karbach.superapp.data.Card;
 import de.karbach.superapp.data.Dictionary;
 import de.karbach.superapp.data.DictionaryManagement;
+import de.karbach.superapp.data.ReviewLog;
+import de.karbach.superapp.data.ReviewScheduler;
+import de.karbach.superapp.data.SessionOrder;
+import de.karbach.superapp.data.SessionResults;
+import de.karbach.superapp.data.SessionSnapshot;
 
 /**
  * Created by Carsten on 29.12.2015.
@@ -60,6 +71,7 @@ public class TestFragment extends Fragment {
 
     /**
      * Parameter for serialzed cards to test/practise. This contains a list of cards.
+     * It is removed from the arguments, once the cards were read.
      */
     public final static String PARAMTESTCARDS = "de.karbach.superapp.TestFragment.CARDS";
     /**
@@ -72,6 +84,104 @@ public class TestFragment extends Fragment {
      */
     public static final String PARAMASKFORLANG2 = "de.karbach.superapp.TestFragment.ASKFORLANG2";
 
+    /**
+     * Parameter for the name of the SessionOrder.Strategy used to order the cards
+     */
+    public static final String PARAMORDER = "de.karbach.superapp.TestFragment.ORDER";
+
+    /**
+     * Parameter for the number of cards in a mixed session (int). If set, cards are drawn
+     * from all boxes of the selected dictionary instead of using PARAMTESTCARDS.
+     */
+    public static final String PARAMMIXEDLENGTH = "de.karbach.superapp.TestFragment.MIXEDLENGTH";
+
+    /**
+     * Parameter for the box weights of a mixed session (double[]), see BoxSampler.setWeights
+     */
+    public static final String PARAMBOXWEIGHTS = "de.karbach.superapp.TestFragment.BOXWEIGHTS";
+
+    /**
+     * Parameter, if true the answer is chosen from CHOICECOUNT options instead of typed (boolean)
+     */
+    public static final String PARAMMULTIPLECHOICE = "de.karbach.superapp.TestFragment.MULTIPLECHOICE";
+
+    /**
+     * Number of options in multiple choice mode including the solution
+     */
+    public static final int CHOICECOUNT = 4;
+
+    /**
+     * Buttons for the options in multiple choice mode
+     */
+    private static final int[] CHOICEBUTTONS = new int[]{R.id.testcard_choice1, R.id.testcard_choice2,
+            R.id.testcard_choice3, R.id.testcard_choice4};
+
+    /**
+     * Key for the seed in the saved instance state
+     */
+    private static final String SAVEDSEED = "de.karbach.superapp.TestFragment.SAVEDSEED";
+
+    /**
+     * Keys for the session snapshot in the saved instance state, see SessionSnapshot
+     */
+    private static final String SAVEDDICTIONARY = "de.karbach.superapp.TestFragment.SAVEDDICTIONARY";
+    private static final String SAVEDCARDS = "de.karbach.superapp.TestFragment.SAVEDCARDS";
+    private static final String SAVEDCOMPLETED = "de.karbach.superapp.TestFragment.SAVEDCOMPLETED";
+    private static final String SAVEDPOSITION = "de.karbach.superapp.TestFragment.SAVEDPOSITION";
+
+    /**
+     * Keys for the uncommitted answers in the saved instance state: card keys, grades, times and session indexes
+     */
+    private static final String SAVEDANSWERCARDS = "de.karbach.superapp.TestFragment.SAVEDANSWERCARDS";
+    private static final String SAVEDANSWERGRADES = "de.karbach.superapp.TestFragment.SAVEDANSWERGRADES";
+    private static final String SAVEDANSWERTIMES = "de.karbach.superapp.TestFragment.SAVEDANSWERTIMES";
+    private static final String SAVEDANSWERINDEXES = "de.karbach.superapp.TestFragment.SAVEDANSWERINDEXES";
+
+    /**
+     * Key in the saved instance state, true if the snapshot was written to the session file
+     */
+    private static final String SAVEDINFILE = "de.karbach.superapp.TestFragment.SAVEDINFILE";
+
+    /**
+     * Seed of the card order, the same seed results in the same order of the same cards
+     */
+    private long seed;
+
+    /**
+     * Moves the tested cards within the boxes of the dictionary selected at the start of the session
+     */
+    private BoxTransitions transitions = new BoxTransitions(null);
+
+    /**
+     * Answers of this session, which are not yet applied to the dictionary
+     */
+    private SessionResults results = new SessionResults(transitions);
+
+    /**
+     * Compiled answer matchers of this session by solution
+     */
+    private Map<String, AnswerMatcher> matchers = new HashMap<String, AnswerMatcher>();
+
+    /**
+     * Number of cards in a mixed session, 0 if the given cards are tested
+     */
+    private int mixedLength = 0;
+
+    /**
+     * If true the answer is chosen from a few options
+     */
+    private boolean multipleChoice = false;
+
+    /**
+     * Box weights of a mixed session, null for default weights
+     */
+    private double[] boxWeights;
+
+    /**
+     * Draws the cards of a mixed session
+     */
+    private Random mixedRandom;
+
     /**
      * The cards, which are tested
      */
@@ -135,7 +245,8 @@ public class TestFragment extends Fragment {
         }
 
         TextView status = (TextView) rootView.findViewById(R.id.testcard_statustext);
-        String statusText = (position+1)+"/"+testcards.size();
+        int total = mixedLength > 0 ? mixedLength : testcards.size();
+        String statusText = (position+1)+"/"+total;
         if(realtest){
             Boolean checked = position < testCompleted.size() ? testCompleted.get(position) : false;
             if(checked != null && checked == true){
@@ -180,16 +291,49 @@ public class TestFragment extends Fragment {
         ImageView flag1 = (ImageView) rootView.findViewById(R.id.testcard_flag1);
         ImageView flag2 = (ImageView) rootView.findViewById(R.id.testcard_flag2);
 
-        PictureHelper ph = new PictureHelper(getActivity());
+        PictureHelper ph = PictureHelper.getInstance(getActivity());
         int r1 = ph.getDrawableResourceForLanguage(lang1);
         int r2 = ph.getDrawableResourceForLanguage(lang2);
 
         flag1.setImageResource(r1);
         flag2.setImageResource(r2);
 
+        loadChoices(card, rootView);
+
         setStatusText(card, rootView);
     }
 
+    /**
+     * Show the options for the card in multiple choice mode. The options of a card
+     * depend only on the seed and the position, so that they do not change when going back.
+     * @param card the card currently shown
+     * @param rootView root view of fragment
+     */
+    protected void loadChoices(Card card, View rootView){
+        View choicesView = rootView.findViewById(R.id.testcard_choices);
+        Dictionary dict = transitions.getDictionary();
+        if(! multipleChoice || card == null || dict == null){
+            choicesView.setVisibility(View.GONE);
+            return;
+        }
+        choicesView.setVisibility(View.VISIBLE);
+
+        //The solution is lang1 of the card, if the base language is asked for
+        boolean lang1Answers = ! lang1.equals(baseLanguage);
+        Random random = new Random(seed*31+position);
+        List<String> choices = dict.getDistractorIndex(lang1Answers).getChoices(card, CHOICECOUNT, random);
+        for(int i=0; i<CHOICEBUTTONS.length; i++){
+            Button choice = (Button) rootView.findViewById(CHOICEBUTTONS[i]);
+            if(i < choices.size()){
+                choice.setText(choices.get(i));
+                choice.setVisibility(View.VISIBLE);
+            }
+            else{
+                choice.setVisibility(View.GONE);
+            }
+        }
+    }
+
     /**
      * Show the solution view to the uer.
      */
@@ -217,10 +361,24 @@ public class TestFragment extends Fragment {
         }
     }
 
+    /**
+     * @param solution the solution shown for the current card
+     * @return matcher for this solution, compiled once per session
+     */
+    protected AnswerMatcher getMatcher(String solution){
+        AnswerMatcher result = matchers.get(solution);
+        if(result == null){
+            result = new AnswerMatcher(solution, AnswerMatcher.DEFAULTMAXDISTANCE);
+            matchers.put(solution, result);
+        }
+        return result;
+    }
+
     /**
      * Check if solution given by the user is correct.
      * Run boxUp / boxDown for the card. Start showing the real solution to the user.
-     * Check full text compare, but also try to remove brackets in the word before comparing.
+     * Accepts the variants of the solution (see AnswerMatcher). A near miss with a typo
+     * is shown in yellow and counts as passed.
      */
     protected void checkSolution(){
         View rootView = getView();
@@ -240,28 +398,23 @@ public class TestFragment extends Fragment {
 
         Card card = getCurrentCard();
 
-        boolean solutionCorrect = lang2Text.getText().toString().trim().equals(solution.getText().toString().trim());
-        if(! solutionCorrect){
-            //Try to remove the brackets
-            String longSolution = solution.getText().toString();
-            int bOpen = longSolution.indexOf('(');
-            String shortSolution = longSolution;
-            if(bOpen != -1){
-                shortSolution = longSolution.substring(0, bOpen);
-                shortSolution = shortSolution.trim();
-                solutionCorrect = lang2Text.getText().toString().trim().equals(shortSolution);
-            }
+        AnswerMatcher.Match match = getMatcher(solution.getText().toString()).check(lang2Text.getText().toString());
+        boolean nearMiss = match.verdict == AnswerMatcher.Verdict.NEARMISS;
+        if(nearMiss){
+            lastToast = Toast.makeText(getActivity(), getString(R.string.toast_near_miss, match.variant), Toast.LENGTH_SHORT);
+            lastToast.show();
         }
-        if(solutionCorrect){
+        if(match.verdict.isAccepted() || nearMiss){
             //Correct solution
 
-            cardFrame.setBackgroundColor(Color.GREEN);
+            cardFrame.setBackgroundColor(nearMiss ? Color.YELLOW : Color.GREEN);
             if(realtest) {
                 Boolean isTestCompleted = testCompleted.get(position);
                 if (isTestCompleted != null && isTestCompleted == false) {
-                    boolean levelUp = card.boxUp(getActivity());
+                    int grade = nearMiss ? ReviewScheduler.GRADE_PASSED : ReviewScheduler.GRADE_CORRECT;
+                    SessionResults.Result result = recordAnswer(card, grade);
                     testCompleted.set(position, true);
-                    if(levelUp) {
+                    if(result.isUp() && ! nearMiss) {
                         lastToast = Toast.makeText(getActivity(), getString(R.string.toast_card_up), Toast.LENGTH_SHORT);
                         lastToast.show();
                     }
@@ -274,9 +427,9 @@ public class TestFragment extends Fragment {
             if(realtest) {
                 Boolean isTestCompleted = testCompleted.get(position);
                 if (isTestCompleted != null && isTestCompleted == false) {
-                    boolean levelDown = card.boxDown();
+                    SessionResults.Result result = recordAnswer(card, ReviewScheduler.GRADE_WRONG);
                     testCompleted.set(position, true);
-                    if(levelDown) {
+                    if(result.isDown()) {
                         lastToast = Toast.makeText(getActivity(), getString(R.string.toast_card_down), Toast.LENGTH_SHORT);
                         lastToast.show();
                     }
@@ -288,6 +441,53 @@ public class TestFragment extends Fragment {
         answerShown = true;
     }
 
+    /**
+     * Record the answer for a tested card. The card is moved and saved with commitResults.
+     * @param card the answered card
+     * @param grade grade of the answer, see ReviewScheduler
+     * @return the recorded result
+     */
+    protected SessionResults.Result recordAnswer(Card card, int grade){
+        return results.record(card, grade, System.currentTimeMillis(), position);
+    }
+
+    /**
+     * Undo the last answer, which was not yet committed, and show its card again.
+     * @return true if an answer was undone
+     */
+    public boolean undoLastAnswer(){
+        SessionResults.Result result = results.undo();
+        if(result == null){
+            Toast.makeText(getActivity(), getString(R.string.toast_nothing_to_undo), Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        if(result.sessionIndex < testCompleted.size()){
+            testCompleted.set(result.sessionIndex, false);
+            position = result.sessionIndex;
+        }
+        initAfterMovement();
+        return true;
+    }
+
+    /**
+     * Apply all recorded answers to the dictionary and save it.
+     * @return true on success
+     */
+    public boolean commitResults(){
+        boolean success = results.commit(getActivity());
+        if(! success){
+            Toast.makeText(getActivity(), getString(R.string.toast_error_save), Toast.LENGTH_LONG).show();
+        }
+        return success;
+    }
+
+    /**
+     * @return the answers recorded since the last commit
+     */
+    public SessionResults getResults(){
+        return results;
+    }
+
     /**
      *
      * @return current card which is tested
@@ -329,6 +529,9 @@ public class TestFragment extends Fragment {
      */
     protected void goNext(){
         position++;
+        if(position >= testcards.size() && testcards.size() < mixedLength){
+            drawMixedCard();
+        }
         if(position >= testcards.size()){
             position = 0;
         }
@@ -336,6 +539,32 @@ public class TestFragment extends Fragment {
         initAfterMovement();
     }
 
+    /**
+     * Draw the next card of a mixed session from all boxes and append it to the test cards.
+     * The same card is not drawn twice in a row, if the boxes contain other cards.
+     */
+    protected void drawMixedCard(){
+        Dictionary dict = transitions.getDictionary();
+        if(dict == null){
+            return;
+        }
+        BoxSampler sampler = dict.getBoxSampler(boxWeights);
+        Card previous = testcards.isEmpty() ? null : testcards.get(testcards.size()-1);
+        Card card = sampler.draw(mixedRandom);
+        for(int i=0; i<MAXREDRAWS && card != null && card == previous; i++){
+            card = sampler.draw(mixedRandom);
+        }
+        if(card != null){
+            testcards.add(card);
+            testCompleted.add(false);
+        }
+    }
+
+    /**
+     * Number of attempts to avoid the same card twice in a row in a mixed session
+     */
+    private static final int MAXREDRAWS = 8;
+
     /**
      * Show previous card
      */
@@ -364,26 +593,59 @@ public class TestFragment extends Fragment {
         setRetainInstance(true);
 
         Bundle bundle = getArguments();
+
+        //The tested cards belong to the dictionary selected now
+        transitions = new BoxTransitions(DictionaryManagement.getInstance(getActivity()).getSelectedDictionary());
+        results = new SessionResults(transitions);
+
+        //Restore the order of the cards after the process was killed
+        if(savedInstanceState != null && savedInstanceState.containsKey(SAVEDSEED)){
+            seed = savedInstanceState.getLong(SAVEDSEED);
+        }
+        else{
+            seed = new Random().nextLong();
+        }
+
+        //After the process was killed the cards are restored from the snapshot
+        boolean restored = savedInstanceState != null && restoreSnapshot(savedInstanceState);
+        if(restored){
+            restoreAnswers(savedInstanceState);
+        }
+
         if (bundle != null) {
-            Serializable list = bundle.getSerializable(PARAMTESTCARDS);
+            Serializable list = restored ? null : bundle.getSerializable(PARAMTESTCARDS);
             if (list != null) {
                 List<Card> cardsToCopy = (List<Card>) list;
-                testcards.addAll(cardsToCopy);
 
                 //Mix the cards
-                for(int i=0; i<testcards.size()*3; i++){
-                    int switchWith = (int) (Math.random()*testcards.size());
-                    Card tmpCard = testcards.get(switchWith);
-                    testcards.set(switchWith, testcards.get(0));
-                    testcards.set(0, tmpCard);
-                }
+                SessionOrder order = new SessionOrder(seed, SessionOrder.parseStrategy(bundle.getString(PARAMORDER)));
+                testcards.addAll(order.order(cardsToCopy));
 
                 for(int i=0; i< testcards.size(); i++){
                     testCompleted.add(false);
                 }
             }
+            //The arguments are saved with the fragment state, only the compact snapshot should be saved
+            bundle.remove(PARAMTESTCARDS);
 
             realtest = bundle.getBoolean(PARAMISREALTEST);
+            multipleChoice = bundle.getBoolean(PARAMMULTIPLECHOICE);
+
+            mixedLength = bundle.getInt(PARAMMIXEDLENGTH, 0);
+            if(mixedLength > 0){
+                boxWeights = bundle.getDoubleArray(PARAMBOXWEIGHTS);
+                //A restored session continues with a different, but reproducible sequence
+                mixedRandom = new Random(restored ? seed+testcards.size() : seed);
+                if(testcards.isEmpty()) {
+                    drawMixedCard();
+                }
+            }
+        }
+
+        //The cards are no longer in the arguments, without the snapshot the session cannot be continued
+        if(savedInstanceState != null && ! restored && mixedLength <= 0){
+            Toast.makeText(getActivity(), getString(R.string.toast_session_lost), Toast.LENGTH_LONG).show();
+            getActivity().finish();
         }
 
         //Set second language
@@ -405,6 +667,106 @@ public class TestFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putLong(SAVEDSEED, seed);
+
+        SessionSnapshot snapshot = getSnapshot();
+        if(snapshot.size() <= SessionSnapshot.MAXBUNDLECARDS){
+            outState.putString(SAVEDDICTIONARY, snapshot.getDictionary());
+            outState.putInt(SAVEDPOSITION, snapshot.getPosition());
+            outState.putLongArray(SAVEDCARDS, snapshot.getCardKeys());
+            outState.putLongArray(SAVEDCOMPLETED, snapshot.getCompleted());
+        }
+        else if(snapshot.save(SessionSnapshot.getFile(getActivity(), seed))){
+            outState.putBoolean(SAVEDINFILE, true);
+        }
+
+        //The answers are committed at the end of the session, until then they can be undone
+        List<SessionResults.Result> answers = results.getResults();
+        long[] cardKeys = new long[answers.size()];
+        int[] grades = new int[answers.size()];
+        long[] times = new long[answers.size()];
+        int[] indexes = new int[answers.size()];
+        for(int i=0; i<answers.size(); i++){
+            SessionResults.Result answer = answers.get(i);
+            cardKeys[i] = ReviewLog.getCardKey(answer.card);
+            grades[i] = answer.grade;
+            times[i] = answer.timestamp;
+            indexes[i] = answer.sessionIndex;
+        }
+        outState.putLongArray(SAVEDANSWERCARDS, cardKeys);
+        outState.putIntArray(SAVEDANSWERGRADES, grades);
+        outState.putLongArray(SAVEDANSWERTIMES, times);
+        outState.putIntArray(SAVEDANSWERINDEXES, indexes);
+    }
+
+    /**
+     * Record the uncommitted answers of a restored session again. They were not applied to the
+     * cards, so recording them in the same order results in the same moves.
+     * @param savedInstanceState the saved state
+     */
+    protected void restoreAnswers(Bundle savedInstanceState){
+        long[] cardKeys = savedInstanceState.getLongArray(SAVEDANSWERCARDS);
+        int[] grades = savedInstanceState.getIntArray(SAVEDANSWERGRADES);
+        long[] times = savedInstanceState.getLongArray(SAVEDANSWERTIMES);
+        int[] indexes = savedInstanceState.getIntArray(SAVEDANSWERINDEXES);
+        if(cardKeys == null || grades == null || times == null || indexes == null){
+            return;
+        }
+        Map<Long, Card> byKey = new HashMap<Long, Card>();
+        for(Card card: testcards){
+            byKey.put(ReviewLog.getCardKey(card), card);
+        }
+        for(int i=0; i<cardKeys.length && i<grades.length && i<times.length && i<indexes.length; i++){
+            Card card = byKey.get(cardKeys[i]);
+            if(card != null){
+                results.record(card, grades[i], times[i], indexes[i]);
+            }
+        }
+    }
+
+    /**
+     * @return compact state of this session
+     */
+    public SessionSnapshot getSnapshot(){
+        Dictionary dict = transitions.getDictionary();
+        return SessionSnapshot.create(dict == null ? null : dict.getName(), seed, position, testcards, testCompleted);
+    }
+
+    /**
+     * Restore the cards, their completion and the position after the process was killed.
+     * The seed must be restored before.
+     * @param savedInstanceState the saved state
+     * @return true, if the session was restored
+     */
+    protected boolean restoreSnapshot(Bundle savedInstanceState){
+        SessionSnapshot snapshot = null;
+        if(savedInstanceState.containsKey(SAVEDCARDS)){
+            snapshot = new SessionSnapshot(savedInstanceState.getString(SAVEDDICTIONARY), seed,
+                    savedInstanceState.getInt(SAVEDPOSITION), savedInstanceState.getLongArray(SAVEDCARDS),
+                    savedInstanceState.getLongArray(SAVEDCOMPLETED));
+        }
+        else if(savedInstanceState.getBoolean(SAVEDINFILE)){
+            snapshot = SessionSnapshot.load(SessionSnapshot.getFile(getActivity(), seed));
+        }
+        Dictionary dict = transitions.getDictionary();
+        if(snapshot == null || dict == null || snapshot.getSeed() != seed || dict.getName() == null
+                || ! dict.getName().equals(snapshot.getDictionary())){
+            return false;
+        }
+        position = snapshot.restore(dict, testcards, testCompleted);
+        return true;
+    }
+
+    /**
+     * @return seed of the card order of this session
+     */
+    public long getSeed(){
+        return seed;
+    }
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -429,6 +791,24 @@ public class TestFragment extends Fragment {
             }
         });
 
+        if(multipleChoice){
+            //The chosen option is checked like a typed answer
+            final EditText lang2Text = (EditText) result.findViewById(R.id.testcard_lang2_text);
+            lang2Text.setFocusable(false);
+            for(int id: CHOICEBUTTONS){
+                final Button choice = (Button) result.findViewById(id);
+                choice.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        if(! answerShown) {
+                            lang2Text.setText(choice.getText());
+                        }
+                        checkSolution();
+                    }
+                });
+            }
+        }
+
         Button nextButton = (Button) result.findViewById(R.id.testcard_next_button);
         nextButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -445,6 +825,19 @@ public class TestFragment extends Fragment {
             }
         });
 
+        Button undoButton = (Button) result.findViewById(R.id.testcard_undo);
+        if(realtest){
+            undoButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    undoLastAnswer();
+                }
+            });
+        }
+        else{
+            undoButton.setVisibility(View.INVISIBLE);
+        }
+
         Button editButton = (Button) result.findViewById(R.id.testcard_edit);
         if(realtest){
             editButton.setVisibility(View.INVISIBLE);
@@ -508,6 +901,25 @@ public class TestFragment extends Fragment {
 
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        //Runs before the activity saves the selected dictionary. While the session goes on,
+        //the answers stay undoable and are kept in the saved instance state.
+        if(getActivity().isFinishing()){
+            commitResults();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        //The session is over, it does not need to be restored anymore
+        if(getActivity() != null && getActivity().isFinishing()){
+            SessionSnapshot.getFile(getActivity(), seed).delete();
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
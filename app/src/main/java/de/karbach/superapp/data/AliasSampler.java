@@ -0,0 +1,118 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.Random;
+
+/**
+ * Draws indexes with given weights in O(1) per draw (Walker's alias method,
+ * built with Vose's algorithm in O(n)). Index i is drawn with probability
+ * weights[i]/sum(weights).
+ */
+public class AliasSampler {
+
+    /**
+     * Probability to keep the index of a column instead of taking its alias
+     */
+    private double[] probability;
+
+    /**
+     * Alternative index of each column
+     */
+    private int[] alias;
+
+    /**
+     * @param weights non negative weights, at least one must be positive
+     * @throws IllegalArgumentException if no weight is positive
+     */
+    public AliasSampler(double[] weights){
+        int n = weights.length;
+        double sum = 0;
+        for(double weight: weights){
+            if(weight > 0){
+                sum += weight;
+            }
+        }
+        if(sum <= 0){
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+
+        probability = new double[n];
+        alias = new int[n];
+
+        //Scale weights so that their average is 1, then pair small with large columns
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for(int i=0; i<n; i++){
+            scaled[i] = weights[i] > 0 ? weights[i]*n/sum : 0;
+            if(scaled[i] < 1){
+                small[smallCount++] = i;
+            }
+            else{
+                large[largeCount++] = i;
+            }
+        }
+        while(smallCount > 0 && largeCount > 0){
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more]+scaled[less]-1;
+            if(scaled[more] < 1){
+                small[smallCount++] = more;
+            }
+            else{
+                large[largeCount++] = more;
+            }
+        }
+        //Remaining columns are full, up to rounding errors
+        while(largeCount > 0){
+            int index = large[--largeCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+        while(smallCount > 0){
+            int index = small[--smallCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+    }
+
+    /**
+     * @return number of indexes
+     */
+    public int size(){
+        return probability.length;
+    }
+
+    /**
+     * @param random source of randomness
+     * @return index between 0 and size()-1
+     */
+    public int sample(Random random){
+        int column = random.nextInt(probability.length);
+        if(random.nextDouble() < probability[column]){
+            return column;
+        }
+        return alias[column];
+    }
+}
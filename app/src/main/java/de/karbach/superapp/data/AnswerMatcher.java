@@ -0,0 +1,389 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks answers of a test against the solution of a card.
+ *
+ * The accepted variants of the solution are computed once in the constructor:
+ * alternatives separated by ",", ";" or "/" outside of brackets, the solution with and without
+ * the bracketed parts and each of them without a leading article. Leaving out the article
+ * of the solution is accepted, but an answer with another article is wrong, as the article
+ * shows the gender of the word. All variants are folded
+ * to lower case without diacritics and punctuation. Checking an answer folds it once and
+ * looks it up, so that it runs in linear time of the answer. If nothing matches, answers
+ * with at most a few typos (insertions, deletions, substitutions and swapped neighbours)
+ * are reported as near miss. The distance is computed only within a band of maxDistance
+ * diagonals, which is linear as well.
+ */
+public class AnswerMatcher {
+
+    /**
+     * Default number of typos tolerated for a near miss
+     */
+    public static final int DEFAULTMAXDISTANCE = 1;
+
+    /**
+     * One typo is tolerated per this number of characters of a variant, short words must be exact
+     */
+    public static final int CHARSPERTYPO = 4;
+
+    /**
+     * Leading articles and particles, which may be left out
+     */
+    private static final Set<String> ARTICLES = new HashSet<String>(Arrays.asList(
+            "the", "a", "an", "to",
+            "der", "die", "das", "den", "dem", "des", "ein", "eine", "einen",
+            "en", "ett",
+            "le", "la", "les", "l", "un", "une",
+            "el", "los", "las", "il", "lo", "gli"
+    ));
+
+    /**
+     * Result of a check
+     */
+    public enum Verdict {
+        /**
+         * The answer equals the solution, apart from leading and trailing whitespace
+         */
+        EXACT,
+        /**
+         * The answer matches one of the accepted variants
+         */
+        VARIANT,
+        /**
+         * The answer differs from a variant only by a few typos
+         */
+        NEARMISS,
+        /**
+         * The answer is wrong
+         */
+        WRONG;
+
+        /**
+         * @return true for EXACT and VARIANT
+         */
+        public boolean isAccepted(){
+            return this == EXACT || this == VARIANT;
+        }
+    }
+
+    /**
+     * Structured result of a check
+     */
+    public static class Match {
+        /**
+         * Kind of match
+         */
+        public final Verdict verdict;
+        /**
+         * The variant of the solution, which matched, null for WRONG
+         */
+        public final String variant;
+        /**
+         * Number of typos, 0 unless the verdict is NEARMISS
+         */
+        public final int distance;
+
+        public Match(Verdict verdict, String variant, int distance){
+            this.verdict = verdict;
+            this.variant = variant;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * The trimmed solution
+     */
+    private String solution;
+
+    /**
+     * Maximum number of typos for a near miss, 0 to disable
+     */
+    private int maxDistance;
+
+    /**
+     * Folded variants mapped to the variant as written in the solution
+     */
+    private Map<String, String> variants = new LinkedHashMap<String, String>();
+
+    /**
+     * @param solution the solution as shown to the user
+     * @param maxDistance maximum number of typos for a near miss, 0 to disable near misses
+     */
+    public AnswerMatcher(String solution, int maxDistance){
+        this.solution = solution == null ? "" : solution.trim();
+        this.maxDistance = Math.max(0, maxDistance);
+
+        addVariant(this.solution);
+        addVariant(removeBrackets(this.solution, true));
+        addVariant(removeBrackets(this.solution, false));
+        for(String part: splitAlternatives(this.solution)){
+            addVariant(part);
+            addVariant(removeBrackets(part, true));
+            addVariant(removeBrackets(part, false));
+        }
+    }
+
+    /**
+     * Add a variant with and without leading article
+     * @param variant the variant as written
+     */
+    private void addVariant(String variant){
+        variant = variant.trim();
+        String folded = fold(variant);
+        if(folded.length() == 0){
+            return;
+        }
+        if(! variants.containsKey(folded)){
+            variants.put(folded, variant);
+        }
+        String withoutArticle = stripArticle(folded);
+        if(! variants.containsKey(withoutArticle)){
+            variants.put(withoutArticle, variant);
+        }
+    }
+
+    /**
+     * Split at ",", ";" and "/", which are not enclosed in brackets
+     * @param text the solution
+     * @return the alternatives, a single entry if there are none
+     */
+    private static List<String> splitAlternatives(String text){
+        List<String> result = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for(int i=0; i<text.length(); i++){
+            char c = text.charAt(i);
+            if(c == '(' || c == '['){
+                depth++;
+            }
+            else if((c == ')' || c == ']') && depth > 0){
+                depth--;
+            }
+            else if(depth == 0 && (c == ',' || c == ';' || c == '/')){
+                result.add(text.substring(start, i));
+                start = i+1;
+            }
+        }
+        result.add(text.substring(start));
+        return result;
+    }
+
+    /**
+     * @param text a solution
+     * @param dropContent if true, the brackets are removed with their content, otherwise only the brackets
+     * @return text without brackets, an unclosed bracket extends to the end
+     */
+    private static String removeBrackets(String text, boolean dropContent){
+        StringBuilder result = new StringBuilder(text.length());
+        int depth = 0;
+        for(int i=0; i<text.length(); i++){
+            char c = text.charAt(i);
+            if(c == '(' || c == '['){
+                depth++;
+                result.append(' ');
+            }
+            else if((c == ')' || c == ']') && depth > 0){
+                depth--;
+                result.append(' ');
+            }
+            else if(depth == 0 || ! dropContent){
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Fold a text for comparison: lower case, without diacritics, punctuation turns into
+     * spaces and runs of spaces are collapsed.
+     * @param text the text
+     * @return folded text, "" for null
+     */
+    public static String fold(String text){
+        if(text == null){
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for(int i=0; i<decomposed.length(); i++){
+            char c = decomposed.charAt(i);
+            if(Character.getType(c) == Character.NON_SPACING_MARK){
+                continue;
+            }
+            if(Character.isLetterOrDigit(c)){
+                if(space && result.length() > 0){
+                    result.append(' ');
+                }
+                space = false;
+                if(c == 'ß'){
+                    result.append("ss");
+                }
+                else {
+                    result.append(Character.toLowerCase(c));
+                }
+            }
+            else{
+                space = true;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param folded a folded text
+     * @return the first word, if that is an article and more words follow, null otherwise
+     */
+    private static String getArticle(String folded){
+        int space = folded.indexOf(' ');
+        if(space > 0 && ARTICLES.contains(folded.substring(0, space))){
+            return folded.substring(0, space);
+        }
+        return null;
+    }
+
+    /**
+     * @param folded a folded text
+     * @return the text without its first word, if that is an article and more words follow
+     */
+    private static String stripArticle(String folded){
+        String article = getArticle(folded);
+        if(article != null){
+            return folded.substring(article.length()+1);
+        }
+        return folded;
+    }
+
+    /**
+     * @return the folded accepted variants
+     */
+    public Set<String> getVariants(){
+        return variants.keySet();
+    }
+
+    /**
+     * Check an answer.
+     * @param answer the answer given by the user
+     * @return the verdict, never null
+     */
+    public Match check(String answer){
+        if(answer == null){
+            answer = "";
+        }
+        String trimmed = answer.trim();
+        if(trimmed.length() > 0 && trimmed.equals(solution)){
+            return new Match(Verdict.EXACT, solution, 0);
+        }
+        String folded = fold(trimmed);
+        if(folded.length() == 0){
+            return new Match(Verdict.WRONG, null, 0);
+        }
+        String variant = variants.get(folded);
+        if(variant != null){
+            return new Match(Verdict.VARIANT, variant, 0);
+        }
+
+        //An answer with another article than the solution is wrong, even if it is close
+        String article = getArticle(folded);
+        Match best = new Match(Verdict.WRONG, null, 0);
+        for(Map.Entry<String, String> entry: variants.entrySet()){
+            String variantArticle = getArticle(entry.getKey());
+            if(article != null && variantArticle != null && ! article.equals(variantArticle)){
+                continue;
+            }
+            int allowed = Math.min(maxDistance, entry.getKey().length()/CHARSPERTYPO);
+            if(best.variant != null){
+                //Only a closer variant can improve the result
+                allowed = Math.min(allowed, best.distance-1);
+            }
+            if(allowed <= 0){
+                continue;
+            }
+            int distance = getDistance(folded, entry.getKey(), allowed);
+            if(distance <= allowed){
+                best = new Match(Verdict.NEARMISS, entry.getValue(), distance);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Optimal string alignment distance (Levenshtein with swaps of neighbours), computed
+     * only for the diagonals within max, so that it takes O(max*length).
+     * @param a first text
+     * @param b second text
+     * @param max largest distance of interest
+     * @return the distance, or max+1 if it is larger than max
+     */
+    static int getDistance(String a, String b, int max){
+        int n = a.length();
+        int m = b.length();
+        int limit = max+1;
+        if(Math.abs(n-m) > max){
+            return limit;
+        }
+        int[] before = new int[m+1];
+        int[] previous = new int[m+1];
+        int[] current = new int[m+1];
+        for(int j=0; j<=m; j++){
+            previous[j] = j <= max ? j : limit;
+            before[j] = limit;
+        }
+        for(int i=1; i<=n; i++){
+            int from = Math.max(1, i-max);
+            int to = Math.min(m, i+max);
+            current[0] = i <= max ? i : limit;
+            if(from > 1){
+                current[from-1] = limit;
+            }
+            int rowMin = from == 1 ? current[0] : limit;
+            for(int j=from; j<=to; j++){
+                int cost = a.charAt(i-1) == b.charAt(j-1) ? 0 : 1;
+                int value = Math.min(previous[j-1]+cost, Math.min(previous[j]+1, current[j-1]+1));
+                if(i > 1 && j > 1 && a.charAt(i-1) == b.charAt(j-2) && a.charAt(i-2) == b.charAt(j-1)){
+                    value = Math.min(value, before[j-2]+1);
+                }
+                current[j] = Math.min(value, limit);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if(to < m){
+                current[to+1] = limit;
+            }
+            if(rowMin > max){
+                return limit;
+            }
+            int[] tmp = before;
+            before = previous;
+            previous = current;
+            current = tmp;
+        }
+        return Math.min(previous[m], limit);
+    }
+}
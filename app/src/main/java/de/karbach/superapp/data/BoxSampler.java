@@ -0,0 +1,213 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Draws cards from all boxes of a dictionary for mixed training sessions.
+ * A box is chosen with probability proportional to its weight, empty boxes are
+ * skipped, then a card is chosen uniformly within the box. Each draw takes O(1).
+ *
+ * The cards are sorted into boxes once. Cards moved into another box, e.g. by a test,
+ * are detected, when they are drawn, and moved into their new box in O(1).
+ * Only then the alias table over the boxes is rebuilt, if a box became empty or non empty.
+ */
+public class BoxSampler {
+
+    /**
+     * Cards of each box, entry i contains the cards of box i+1, as far as known
+     */
+    private List<ArrayList<Card>> boxes;
+
+    /**
+     * Index of each card in its list in boxes
+     */
+    private Map<Card, Integer> positions = new IdentityHashMap<Card, Integer>();
+
+    /**
+     * Weight of each box, entry i for box i+1
+     */
+    private double[] weights;
+
+    /**
+     * Draws an entry of sampledBoxes, null if no box can be drawn
+     */
+    private AliasSampler alias;
+
+    /**
+     * Box indexes with cards and a positive weight
+     */
+    private int[] sampledBoxes;
+
+    /**
+     * Maximum number of moved cards handled within one draw
+     */
+    private static final int MAXRELOCATIONS = 64;
+
+    /**
+     * @param cardsByBox cards of each box, see Dictionary.getCardsByBox, the lists are used directly
+     * @param weights weight of each box, entry i for box i+1, null for getDefaultWeights
+     */
+    public BoxSampler(List<ArrayList<Card>> cardsByBox, double[] weights){
+        this.boxes = cardsByBox;
+        for(ArrayList<Card> box: boxes){
+            for(int i=0; i<box.size(); i++){
+                positions.put(box.get(i), i);
+            }
+        }
+        setWeights(weights);
+    }
+
+    /**
+     * @param boxcount number of boxes
+     * @return weights preferring lower boxes, box 1 has weight boxcount, the last box weight 1
+     */
+    public static double[] getDefaultWeights(int boxcount){
+        double[] result = new double[boxcount];
+        for(int i=0; i<boxcount; i++){
+            result[i] = boxcount-i;
+        }
+        return result;
+    }
+
+    /**
+     * Change the box weights, takes O(number of boxes).
+     * @param weights weight of each box, entry i for box i+1, missing entries count as 0, null for getDefaultWeights
+     */
+    public void setWeights(double[] weights){
+        if(weights == null){
+            weights = getDefaultWeights(boxes.size());
+        }
+        this.weights = Arrays.copyOf(weights, boxes.size());
+        rebuildAlias();
+    }
+
+    /**
+     * @return copy of the current box weights
+     */
+    public double[] getWeights(){
+        return Arrays.copyOf(weights, weights.length);
+    }
+
+    /**
+     * @return true, if no card can be drawn
+     */
+    public boolean isEmpty(){
+        return alias == null;
+    }
+
+    /**
+     * Create the alias table over all boxes with cards and positive weight
+     */
+    private void rebuildAlias(){
+        int count = 0;
+        for(int i=0; i<boxes.size(); i++){
+            if(weights[i] > 0 && ! boxes.get(i).isEmpty()){
+                count++;
+            }
+        }
+        if(count == 0){
+            alias = null;
+            sampledBoxes = new int[0];
+            return;
+        }
+        sampledBoxes = new int[count];
+        double[] sampledWeights = new double[count];
+        int index = 0;
+        for(int i=0; i<boxes.size(); i++){
+            if(weights[i] > 0 && ! boxes.get(i).isEmpty()){
+                sampledBoxes[index] = i;
+                sampledWeights[index] = weights[i];
+                index++;
+            }
+        }
+        alias = new AliasSampler(sampledWeights);
+    }
+
+    /**
+     * Draw a card.
+     * @param random source of randomness
+     * @return a card, null if all boxes with positive weight are empty
+     */
+    public Card draw(Random random){
+        for(int attempt=0; attempt<MAXRELOCATIONS && alias != null; attempt++){
+            int boxIndex = sampledBoxes[alias.sample(random)];
+            ArrayList<Card> box = boxes.get(boxIndex);
+            Card card = box.get(random.nextInt(box.size()));
+            if(card.getBox() == boxIndex+1){
+                return card;
+            }
+            //The card was moved since the boxes were sorted
+            relocate(card, boxIndex);
+        }
+        return null;
+    }
+
+    /**
+     * Update the box lists right after a card was moved, see Dictionary.cardMoved.
+     * @param card the moved card
+     * @param oldBox box of the card before the move
+     */
+    public void moved(Card card, int oldBox){
+        Integer position = positions.get(card);
+        if(position == null || oldBox < 1 || oldBox > boxes.size()){
+            return;
+        }
+        ArrayList<Card> box = boxes.get(oldBox-1);
+        if(position < box.size() && box.get(position) == card && card.getBox() != oldBox){
+            relocate(card, oldBox-1);
+        }
+    }
+
+    /**
+     * Move a card, whose box changed, from its old list into the list of its current box.
+     * @param card the moved card
+     * @param oldBoxIndex index of the list containing the card
+     */
+    private void relocate(Card card, int oldBoxIndex){
+        ArrayList<Card> oldBox = boxes.get(oldBoxIndex);
+        int position = positions.get(card);
+        Card last = oldBox.remove(oldBox.size()-1);
+        if(last != card){
+            oldBox.set(position, last);
+            positions.put(last, position);
+        }
+        boolean rebuild = oldBox.isEmpty();
+
+        int newBox = card.getBox();
+        if(newBox >= 1 && newBox <= boxes.size()){
+            ArrayList<Card> target = boxes.get(newBox-1);
+            rebuild |= target.isEmpty();
+            positions.put(card, target.size());
+            target.add(card);
+        }
+        else{
+            positions.remove(card);
+        }
+        if(rebuild){
+            rebuildAlias();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+/**
+ * Moves cards of one dictionary up and down the boxes during a test session.
+ * The box limit of the dictionary is read once, when the session starts, and the
+ * dictionary is informed about each move, so that its box lists and its dirty state
+ * stay up to date. Works for any dictionary, not only the selected one.
+ */
+public class BoxTransitions {
+
+    /**
+     * Owner of the moved cards, null if the cards do not belong to a dictionary
+     */
+    private Dictionary dictionary;
+
+    /**
+     * Highest box of the dictionary
+     */
+    private int maxBox;
+
+    /**
+     * @param dictionary the dictionary of the tested cards, null to use Dictionary.DEFAULTBOXCOUNT
+     */
+    public BoxTransitions(Dictionary dictionary){
+        this.dictionary = dictionary;
+        this.maxBox = dictionary == null ? Dictionary.DEFAULTBOXCOUNT : dictionary.getBoxcount();
+    }
+
+    /**
+     * @return the dictionary of the tested cards, might be null
+     */
+    public Dictionary getDictionary(){
+        return dictionary;
+    }
+
+    /**
+     * @return highest box of the dictionary
+     */
+    public int getMaxBox(){
+        return maxBox;
+    }
+
+    /**
+     * Move a card into the next box, if it is not yet in the highest box.
+     * @param card the card answered correctly
+     * @return true if the box was increased
+     */
+    public boolean up(Card card){
+        int oldBox = card.getBox();
+        boolean result = card.boxUp(maxBox);
+        moved(card, oldBox);
+        return result;
+    }
+
+    /**
+     * Move a card into the previous box, if it is not yet in box 1.
+     * @param card the card answered wrong
+     * @return true if the box was decreased
+     */
+    public boolean down(Card card){
+        int oldBox = card.getBox();
+        boolean result = card.boxDown();
+        moved(card, oldBox);
+        return result;
+    }
+
+    /**
+     * Move a card into a given box, e.g. to apply a recorded answer.
+     * @param card the card to move
+     * @param box the new box
+     */
+    public void moveTo(Card card, int box){
+        int oldBox = card.getBox();
+        if(box != oldBox){
+            card.setBox(box);
+            moved(card, oldBox);
+        }
+    }
+
+    private void moved(Card card, int oldBox){
+        if(dictionary != null && card.getBox() != oldBox){
+            dictionary.cardMoved(card, oldBox);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Carsten on 27.12.2015.
@@ -55,6 +56,7 @@ public class Card implements Serializable {
 
     public void setBox(int box) {
         this.box = box;
+        changed();
     }
 
     /**
@@ -71,6 +73,158 @@ public class Card implements Serializable {
      */
     private String lesson = null;
 
+    /**
+     * Default ease factor of new cards in percent, see SM2Scheduler
+     */
+    public static final int DEFAULTEASEFACTOR = 250;
+
+    /**
+     * Time in ms since epoch, at which this card should be repeated next, 0 for new cards
+     */
+    private long due = 0;
+
+    /**
+     * Current repetition interval in days
+     */
+    private int interval = 0;
+
+    /**
+     * Number of successful repetitions in a row
+     */
+    private int repetitions = 0;
+
+    /**
+     * Ease factor in percent, i.e. 250 means the interval grows by factor 2.5
+     */
+    private int easeFactor = DEFAULTEASEFACTOR;
+
+    /**
+     * Cached results of toSimpleString for lang1, lang2, type and lesson.
+     * Computed on first access and reset by the setters.
+     */
+    private transient String simpleLang1, simpleLang2, simpleType, simpleLesson;
+
+    /**
+     * Source for runtime ids, shared by all cards of this process
+     */
+    private static final AtomicLong nextRuntimeId = new AtomicLong();
+
+    /**
+     * Id of this card object, unique within the running process, 0 until first requested
+     */
+    private transient long runtimeId = 0;
+
+    /**
+     * Incremented by each setter, so that views can detect edited cards
+     */
+    private transient int version = 0;
+
+    /**
+     * The id is not persisted. It is assigned on first access and identifies this
+     * card object as long as the process lives, e.g. as stable id for list views.
+     * @return id of this card object, unique within the process
+     */
+    public synchronized long getRuntimeId(){
+        if(runtimeId == 0){
+            runtimeId = nextRuntimeId.incrementAndGet();
+        }
+        return runtimeId;
+    }
+
+    /**
+     * Dictionary containing this card, informed about every change of the card
+     */
+    private transient Dictionary dictionary;
+
+    /**
+     * @return version of this card, changes whenever one of its values is set
+     */
+    public int getVersion(){
+        return version;
+    }
+
+    /**
+     * Called by Dictionary, when this card is added to or removed from it.
+     * @param dictionary the dictionary containing this card, null if it was removed
+     */
+    void setDictionary(Dictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return the dictionary containing this card, null if it was not added to a dictionary
+     */
+    Dictionary getDictionary(){
+        return dictionary;
+    }
+
+    /**
+     * Called by each setter, increments the version and informs the dictionary of this card.
+     */
+    private void changed(){
+        version++;
+        if(dictionary != null){
+            dictionary.cardChanged(this);
+        }
+    }
+
+    /**
+     * @return time in ms since epoch, at which this card should be repeated next, 0 for new cards
+     */
+    public long getDue() {
+        return due;
+    }
+
+    /**
+     * The schedulers set due to the time of the review plus the interval.
+     * @return time in ms since epoch of the last review, 0 if the card was never reviewed
+     */
+    public long getLastReview() {
+        if(due == 0){
+            return 0;
+        }
+        return due - interval*ReviewScheduler.DAYMILLIS;
+    }
+
+    /**
+     * @return current repetition interval in days
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return number of successful repetitions in a row
+     */
+    public int getRepetitions() {
+        return repetitions;
+    }
+
+    /**
+     * @return ease factor in percent, i.e. 250 means the interval grows by factor 2.5
+     */
+    public int getEaseFactor() {
+        return easeFactor;
+    }
+
+    /**
+     * Set the repetition schedule of this card, usually done by a ReviewScheduler.
+     * If the card belongs to a dictionary, call Dictionary.updateDue afterwards or
+     * use Dictionary.reviewCard, so that the due cards of the dictionary stay sorted.
+     *
+     * @param due time in ms since epoch, at which this card should be repeated next
+     * @param interval repetition interval in days
+     * @param repetitions number of successful repetitions in a row
+     * @param easeFactor ease factor in percent
+     */
+    public void setSchedule(long due, int interval, int repetitions, int easeFactor) {
+        this.due = due;
+        this.interval = interval;
+        this.repetitions = repetitions;
+        this.easeFactor = easeFactor;
+        changed();
+    }
+
     /**
      *
      * @return Name of the lesson, to which this card belongs to
@@ -85,6 +239,8 @@ public class Card implements Serializable {
      */
     public void setLesson(String lesson) {
         this.lesson = lesson;
+        this.simpleLesson = null;
+        changed();
     }
 
     /**
@@ -101,6 +257,8 @@ public class Card implements Serializable {
      */
     public void setType(String type) {
         this.type = type;
+        this.simpleType = null;
+        changed();
     }
 
     /**
@@ -117,6 +275,8 @@ public class Card implements Serializable {
      */
     public void setLang2(String lang2) {
         this.lang2 = lang2;
+        this.simpleLang2 = null;
+        changed();
     }
 
     /**
@@ -133,6 +293,8 @@ public class Card implements Serializable {
      */
     public void setLang1(String lang1) {
         this.lang1 = lang1;
+        this.simpleLang1 = null;
+        changed();
     }
 
     /**
@@ -153,13 +315,25 @@ public class Card implements Serializable {
      * @return true if value was increased, false if value was not increased due to max boundary
      */
     public boolean boxUp(Context context) {
-        int maxvalue = 5;
+        int maxvalue = Dictionary.DEFAULTBOXCOUNT;
         if(context != null) {
             DictionaryManagement dm = DictionaryManagement.getInstance(context);
             Dictionary dict = dm.getSelectedDictionary();
             maxvalue = dict.getBoxcount();
         }
+        return boxUp(maxvalue);
+    }
+
+    /**
+     * Try to bring card into next box. Works only until max box value is reached.
+     * Use BoxTransitions for cards of a dictionary, so that the dictionary is informed about the move.
+     *
+     * @param maxvalue highest box of the dictionary of this card
+     * @return true if value was increased, false if value was not increased due to max boundary
+     */
+    public boolean boxUp(int maxvalue) {
         box++;
+        changed();
         if (box <= maxvalue) {
             return true;
         } else {
@@ -175,6 +349,7 @@ public class Card implements Serializable {
      */
     public boolean boxDown() {
         box--;
+        changed();
         if (box < 1) {
             box = 1;
             return false;
@@ -190,7 +365,8 @@ public class Card implements Serializable {
      */
     public String export() {
         JSONArray array = new JSONArray();
-        String[] values = new String[]{lang1, lang2, type, lesson, String.valueOf(box)};
+        String[] values = new String[]{lang1, lang2, type, lesson, String.valueOf(box),
+                String.valueOf(due), String.valueOf(interval), String.valueOf(repetitions), String.valueOf(easeFactor)};
 
         for (String value : values) {
             array.put(value);
@@ -280,8 +456,8 @@ public class Card implements Serializable {
     /**
      * Load card from JSON array in String.
      *
-     * @param jsonString JSON string, e.g. ["danke","thank you",null,null,"1"]
-     * @param loadAll if true, try to load the box of the card, too
+     * @param jsonString JSON string, e.g. ["danke","thank you",null,null,"1","0","0","0","250"]
+     * @param loadAll if true, try to load the box and the repetition schedule of the card, too
      * @return loaded card, null on error
      */
     public static Card loadImported(String jsonString, boolean loadAll) {
@@ -315,6 +491,16 @@ public class Card implements Serializable {
                     box = Integer.parseInt(array.getString(4));
                 }
                 result.setBox(box);
+
+                //The schedule is missing in files exported by older versions
+                if (array.length() > 8) {
+                    try {
+                        result.setSchedule(Long.parseLong(array.getString(5)), Integer.parseInt(array.getString(6)),
+                                Integer.parseInt(array.getString(7)), Integer.parseInt(array.getString(8)));
+                    } catch (NumberFormatException e) {
+                        result.setSchedule(0, 0, 0, DEFAULTEASEFACTOR);
+                    }
+                }
             }
 
             return result;
@@ -346,6 +532,50 @@ public class Card implements Serializable {
         return input;
     }
 
+    /**
+     *
+     * @return toSimpleString(getLang1()), cached
+     */
+    public String getSimpleLang1(){
+        if(simpleLang1 == null){
+            simpleLang1 = toSimpleString(lang1);
+        }
+        return simpleLang1;
+    }
+
+    /**
+     *
+     * @return toSimpleString(getLang2()), cached
+     */
+    public String getSimpleLang2(){
+        if(simpleLang2 == null){
+            simpleLang2 = toSimpleString(lang2);
+        }
+        return simpleLang2;
+    }
+
+    /**
+     *
+     * @return toSimpleString(getType()), cached
+     */
+    public String getSimpleType(){
+        if(simpleType == null){
+            simpleType = toSimpleString(type);
+        }
+        return simpleType;
+    }
+
+    /**
+     *
+     * @return toSimpleString(getLesson()), cached
+     */
+    public String getSimpleLesson(){
+        if(simpleLesson == null){
+            simpleLesson = toSimpleString(lesson);
+        }
+        return simpleLesson;
+    }
+
     /**
      * Check if this card matches for a search string.
      *
@@ -358,26 +588,22 @@ public class Card implements Serializable {
         }
 
         if(type != null){
-            String check = toSimpleString(type);
-            if(check.equals(simpleSearch)){
+            if(getSimpleType().equals(simpleSearch)){
                 return true;
             }
         }
         if(lesson != null){
-            String check = toSimpleString(lesson);
-            if(check.equals(simpleSearch)){
+            if(getSimpleLesson().equals(simpleSearch)){
                 return true;
             }
         }
         if(lang1 != null){
-            String check = toSimpleString(lang1);
-            if(check.contains(simpleSearch)){
+            if(getSimpleLang1().contains(simpleSearch)){
                 return true;
             }
         }
         if(lang2 != null){
-            String check = toSimpleString(lang2);
-            if(check.contains(simpleSearch)){
+            if(getSimpleLang2().contains(simpleSearch)){
                 return true;
             }
         }
@@ -0,0 +1,567 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled search query for cards. A query is parsed once and can then be
+ * evaluated against any number of cards in a single pass.
+ *
+ * Supported syntax, all terms must match (AND):
+ * <pre>{@code
+ * box:>=3 lesson:7 type:noun "guten tag" -lang2:/^el/ !haus
+ * }</pre>
+ * Fields are box, lesson, type, lang1 and lang2. A box value can be prefixed with
+ * one of the operators =, &lt;, &lt;=, &gt; or &gt;=. Values for lesson and type must
+ * match exactly, values for lang1 and lang2 must be contained in the word. Values in
+ * slashes are regular expressions. A leading - or ! negates a term. Terms without a
+ * field behave like {@link Card#matchesSearch(String)}.
+ *
+ * On compilation the positive box terms are folded into a box range, which is checked
+ * first. All other terms are ordered by their costs, so that cheap comparisons
+ * filter out cards before any regular expression is run. Normalized card values
+ * are taken from the cache in Card, so that they are computed only once per card.
+ */
+public class CardQuery {
+
+    /**
+     * Fields, which can be addressed in a query, e.g. type:noun
+     */
+    private static final String FIELD_BOX = "box", FIELD_LESSON = "lesson", FIELD_TYPE = "type", FIELD_LANG1 = "lang1", FIELD_LANG2 = "lang2";
+
+    /**
+     * A single compiled condition of the query.
+     */
+    protected static abstract class Term {
+        /**
+         * If true, the result of the condition is inverted
+         */
+        protected boolean negated;
+
+        /**
+         * @return relative costs of evaluating this term, cheaper terms are evaluated first
+         */
+        protected abstract int cost();
+
+        /**
+         * @param card the card to check
+         * @return true, if the condition holds for the card (ignoring negation)
+         */
+        protected abstract boolean test(Card card);
+
+        /**
+         * @param card the card to check
+         * @return true, if the card passes this term
+         */
+        public boolean matches(Card card){
+            return test(card) != negated;
+        }
+    }
+
+    /**
+     * Compares the box of a card with a fixed value
+     */
+    protected static class BoxTerm extends Term {
+        private String operator;
+        private int value;
+
+        public BoxTerm(String operator, int value){
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        protected int cost() {
+            return 0;
+        }
+
+        @Override
+        protected boolean test(Card card) {
+            int box = card.getBox();
+            if(">=".equals(operator)){
+                return box >= value;
+            }
+            if("<=".equals(operator)){
+                return box <= value;
+            }
+            if(">".equals(operator)){
+                return box > value;
+            }
+            if("<".equals(operator)){
+                return box < value;
+            }
+            return box == value;
+        }
+    }
+
+    /**
+     * Checks a simple text against the card, optionally restricted to one field
+     */
+    protected static class TextTerm extends Term {
+        /**
+         * Search text, already converted by Card.toSimpleString
+         */
+        private String simpleText;
+        /**
+         * The field to check, null for all fields
+         */
+        private String field;
+
+        public TextTerm(String field, String text){
+            this.field = field;
+            this.simpleText = Card.toSimpleString(text);
+        }
+
+        @Override
+        protected int cost() {
+            if(FIELD_TYPE.equals(field) || FIELD_LESSON.equals(field)){
+                return 1;
+            }
+            return 2;
+        }
+
+        @Override
+        protected boolean test(Card card) {
+            if(field == null || FIELD_TYPE.equals(field)){
+                if(simpleText.equals(card.getSimpleType())){
+                    return true;
+                }
+            }
+            if(field == null || FIELD_LESSON.equals(field)){
+                if(simpleText.equals(card.getSimpleLesson())){
+                    return true;
+                }
+            }
+            if(field == null || FIELD_LANG1.equals(field)){
+                String check = card.getSimpleLang1();
+                if(check != null && check.contains(simpleText)){
+                    return true;
+                }
+            }
+            if(field == null || FIELD_LANG2.equals(field)){
+                String check = card.getSimpleLang2();
+                if(check != null && check.contains(simpleText)){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Runs a regular expression on the original values of the card
+     */
+    protected static class RegexTerm extends Term {
+        private Pattern pattern;
+        /**
+         * The field to check, null for both languages
+         */
+        private String field;
+
+        public RegexTerm(String field, Pattern pattern){
+            this.field = field;
+            this.pattern = pattern;
+        }
+
+        @Override
+        protected int cost() {
+            return 3;
+        }
+
+        /**
+         * @param value value of a card field, might be null
+         * @return true if the pattern is found in the value
+         */
+        private boolean find(String value){
+            return value != null && pattern.matcher(value).find();
+        }
+
+        @Override
+        protected boolean test(Card card) {
+            if(field == null){
+                return find(card.getLang1()) || find(card.getLang2());
+            }
+            if(FIELD_LANG1.equals(field)){
+                return find(card.getLang1());
+            }
+            if(FIELD_LANG2.equals(field)){
+                return find(card.getLang2());
+            }
+            if(FIELD_TYPE.equals(field)){
+                return find(card.getType());
+            }
+            if(FIELD_LESSON.equals(field)){
+                return find(card.getLesson());
+            }
+            return find(String.valueOf(card.getBox()));
+        }
+    }
+
+    /**
+     * Compiled terms ordered by their costs
+     */
+    private List<Term> terms = new ArrayList<Term>();
+
+    /**
+     * Source text of each term in the order of the query string, e.g. ["box:>=3", "lang1:ha"]
+     */
+    private List<String> tokens = new ArrayList<String>();
+
+    /**
+     * True, if appending characters to the last token can only reduce the matching cards.
+     * This holds for a positive lang1 or lang2 term, which checks for contained text.
+     */
+    private boolean lastTokenExtendable = false;
+
+    /**
+     * Allowed box range derived from all positive box terms
+     */
+    private int minBox = Integer.MIN_VALUE, maxBox = Integer.MAX_VALUE;
+
+    /**
+     * Use parse to create a query.
+     */
+    protected CardQuery(){
+    }
+
+    /**
+     * @param name potential field name, e.g. "box"
+     * @return true if name is a field known by the query language
+     */
+    private static boolean isField(String name){
+        return FIELD_BOX.equals(name) || FIELD_LESSON.equals(name) || FIELD_TYPE.equals(name)
+                || FIELD_LANG1.equals(name) || FIELD_LANG2.equals(name);
+    }
+
+    /**
+     * Check, whether a search string uses the query syntax, i.e. it contains a term with
+     * a field, a quoted value or a regular expression. Other search strings should be
+     * searched as simple text (see Card.matchesSearch), so that e.g. "Lektion 7" or the
+     * suffix "-en" keep their meaning.
+     * @param search the search string
+     * @return true, if the search should be compiled with parse
+     */
+    public static boolean isQuery(String search){
+        if(search == null){
+            return false;
+        }
+        int n = search.length();
+        int i = 0;
+        while(i < n){
+            while(i < n && Character.isWhitespace(search.charAt(i))){
+                i++;
+            }
+            if(i >= n){
+                break;
+            }
+            char first = search.charAt(i);
+            if((first == '-' || first == '!') && i+1 < n){
+                i++;
+            }
+            char c = search.charAt(i);
+            if(c == '"' || c == '/'){
+                return true;
+            }
+            int j = i;
+            while(j < n && Character.isLetterOrDigit(search.charAt(j))){
+                j++;
+            }
+            if(j < n && j > i && search.charAt(j) == ':' && isField(search.substring(i, j).toLowerCase())){
+                return true;
+            }
+            while(j < n && !Character.isWhitespace(search.charAt(j))){
+                j++;
+            }
+            i = j;
+        }
+        return false;
+    }
+
+    /**
+     * Parse and compile a query string.
+     *
+     * @param query e.g. box:&gt;=3 lesson:7 type:noun "word"
+     * @return the compiled query, null if the query is malformed
+     */
+    public static CardQuery parse(String query){
+        CardQuery result = new CardQuery();
+        if(query == null){
+            return result;
+        }
+        int n = query.length();
+        int i = 0;
+        while(i < n){
+            while(i < n && Character.isWhitespace(query.charAt(i))){
+                i++;
+            }
+            if(i >= n){
+                break;
+            }
+            int tokenStart = i;
+            boolean negated = false;
+            char first = query.charAt(i);
+            if((first == '-' || first == '!') && i+1 < n && !Character.isWhitespace(query.charAt(i+1))){
+                negated = true;
+                i++;
+            }
+            //Optional field name
+            String field = null;
+            int j = i;
+            while(j < n && Character.isLetterOrDigit(query.charAt(j))){
+                j++;
+            }
+            if(j < n && j > i && query.charAt(j) == ':'){
+                String name = query.substring(i, j).toLowerCase();
+                if(isField(name)){
+                    field = name;
+                    i = j+1;
+                }
+            }
+            //Value of the term
+            String value;
+            boolean regex = false;
+            if(i < n && query.charAt(i) == '"'){
+                int end = query.indexOf('"', i+1);
+                if(end == -1){
+                    end = n;
+                }
+                value = query.substring(i+1, end);
+                i = end+1;
+            }
+            else if(i < n && query.charAt(i) == '/'){
+                StringBuilder expression = new StringBuilder();
+                int k = i+1;
+                while(k < n && query.charAt(k) != '/'){
+                    if(query.charAt(k) == '\\' && k+1 < n && query.charAt(k+1) == '/'){
+                        k++;
+                    }
+                    expression.append(query.charAt(k));
+                    k++;
+                }
+                value = expression.toString();
+                regex = true;
+                i = k+1;
+            }
+            else{
+                int end = i;
+                while(end < n && !Character.isWhitespace(query.charAt(end))){
+                    end++;
+                }
+                value = query.substring(i, end);
+                i = end;
+            }
+
+            if(! result.addTerm(field, value, regex, negated)){
+                return null;
+            }
+            result.tokens.add(query.substring(tokenStart, Math.min(i, n)));
+            result.lastTokenExtendable = !regex && !negated && (FIELD_LANG1.equals(field) || FIELD_LANG2.equals(field));
+        }
+
+        Collections.sort(result.terms, new Comparator<Term>() {
+            @Override
+            public int compare(Term lhs, Term rhs) {
+                return lhs.cost() - rhs.cost();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Compile a single term and add it to this query.
+     * @param field field name or null
+     * @param value the value of the term, without quotes or slashes
+     * @param regex true, if value is a regular expression
+     * @param negated true, if the term is negated
+     * @return false if the term is malformed
+     */
+    private boolean addTerm(String field, String value, boolean regex, boolean negated){
+        Term term;
+        if(regex){
+            try {
+                term = new RegexTerm(field, Pattern.compile(value, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+            }
+            catch(PatternSyntaxException e){
+                return false;
+            }
+        }
+        else if(FIELD_BOX.equals(field)){
+            String operator = "=";
+            for(String op: new String[]{">=", "<=", ">", "<", "="}){
+                if(value.startsWith(op)){
+                    operator = op;
+                    value = value.substring(op.length());
+                    break;
+                }
+            }
+            int number;
+            try{
+                number = Integer.parseInt(value.trim());
+            }
+            catch(NumberFormatException e){
+                return false;
+            }
+            if(! negated){
+                restrictBoxRange(operator, number);
+                return true;
+            }
+            term = new BoxTerm(operator, number);
+        }
+        else{
+            if(Card.toSimpleString(value).length() == 0){
+                //Nothing to search for
+                return true;
+            }
+            term = new TextTerm(field, value);
+        }
+        term.negated = negated;
+        terms.add(term);
+        return true;
+    }
+
+    /**
+     * Fold a positive box condition into the box range
+     * @param operator one of =, &lt;, &lt;=, &gt;, &gt;=
+     * @param value the compared box
+     */
+    private void restrictBoxRange(String operator, int value){
+        int low = Integer.MIN_VALUE;
+        int high = Integer.MAX_VALUE;
+        if(">=".equals(operator)){
+            low = value;
+        }
+        else if("<=".equals(operator)){
+            high = value;
+        }
+        else if(">".equals(operator)){
+            low = value+1;
+        }
+        else if("<".equals(operator)){
+            high = value-1;
+        }
+        else{
+            low = value;
+            high = value;
+        }
+        minBox = Math.max(minBox, low);
+        maxBox = Math.min(maxBox, high);
+    }
+
+    /**
+     * Check, if all cards matching this query also match the previous query.
+     * Then the result of the previous query can be filtered instead of all cards.
+     * This is the case, if this query contains all terms of the previous one,
+     * e.g. "type:noun haus" refines "type:noun", or if only the last term was extended
+     * and it is a positive lang1/lang2 term, e.g. "lang1:haus" refines "lang1:ha".
+     * @param previous the previously executed query
+     * @return true if this query is at least as restrictive as previous
+     */
+    public boolean isRefinementOf(CardQuery previous){
+        if(previous == null){
+            return false;
+        }
+        if(tokens.containsAll(previous.tokens)){
+            return true;
+        }
+        int count = previous.tokens.size();
+        if(count == 0 || count != tokens.size() || !previous.lastTokenExtendable || !lastTokenExtendable){
+            return false;
+        }
+        for(int i=0; i<count-1; i++){
+            if(! tokens.get(i).equals(previous.tokens.get(i))){
+                return false;
+            }
+        }
+        String last = tokens.get(count-1);
+        String previousLast = previous.tokens.get(count-1);
+        return last.startsWith(previousLast);
+    }
+
+    /**
+     * @return true, if the query does not restrict the cards at all
+     */
+    public boolean isEmpty(){
+        return terms.isEmpty() && minBox == Integer.MIN_VALUE && maxBox == Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return true, if no card can ever match this query, e.g. box:1 box:2
+     */
+    public boolean isUnsatisfiable(){
+        return minBox > maxBox;
+    }
+
+    /**
+     * Check a single card against this query.
+     * @param card the card to check
+     * @return true if the card matches all terms
+     */
+    public boolean matches(Card card){
+        if(card == null){
+            return false;
+        }
+        int box = card.getBox();
+        if(box < minBox || box > maxBox){
+            return false;
+        }
+        for(Term term: terms){
+            if(! term.matches(card)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Filter the given cards with one pass.
+     * @param cards the cards to filter
+     * @return new list with all matching cards in the original order
+     */
+    public ArrayList<Card> filter(List<Card> cards){
+        ArrayList<Card> result = new ArrayList<Card>();
+        if(cards == null || isUnsatisfiable()){
+            return result;
+        }
+        for(Card card: cards){
+            if(matches(card)){
+                result.add(card);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Filter all cards of a dictionary.
+     * @param dict the dictionary to search in
+     * @return all matching cards of the dictionary
+     */
+    public ArrayList<Card> filter(Dictionary dict){
+        if(dict == null){
+            return new ArrayList<Card>();
+        }
+        return filter(dict.getCards());
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorts cards by one of their two languages. For each card a collation key of the
+ * simple form of the word is computed once and cached, so that comparisons do not
+ * create any strings. The key is recomputed only, if the word of the card changed.
+ *
+ * A list sorted with this order can be updated incrementally: removed and edited cards
+ * are taken out, new and edited cards are inserted at the position found by binary search.
+ * Empty words are sorted to the front.
+ */
+public class CardSortOrder {
+
+    /**
+     * If more than this fraction of cards changed, update sorts the whole list instead of inserting
+     */
+    private static final int FULLSORTDIVISOR = 4;
+
+    /**
+     * Cached sort key for one card
+     */
+    private static class SortKey {
+        /**
+         * The simple word, for which key was computed
+         */
+        public String source;
+        /**
+         * Collation key of source, null for empty words
+         */
+        public CollationKey key;
+    }
+
+    /**
+     * If true sort by lang1, otherwise by lang2
+     */
+    private boolean byLang1;
+
+    /**
+     * Creates the collation keys
+     */
+    private Collator collator;
+
+    /**
+     * Cached keys for each card, cards are compared by identity
+     */
+    private Map<Card, SortKey> keys = new IdentityHashMap<Card, SortKey>();
+
+    /**
+     * Compares two cards by their cached keys
+     */
+    private Comparator<Card> comparator = new Comparator<Card>() {
+        @Override
+        public int compare(Card lhs, Card rhs) {
+            if(lhs == rhs){
+                return 0;
+            }
+            if(lhs == null){
+                return -1;
+            }
+            if(rhs == null){
+                return 1;
+            }
+            CollationKey lkey = getKey(lhs).key;
+            CollationKey rkey = getKey(rhs).key;
+            if(lkey == null){
+                return rkey == null ? 0 : -1;
+            }
+            if(rkey == null){
+                return 1;
+            }
+            return lkey.compareTo(rkey);
+        }
+    };
+
+    /**
+     * @param byLang1 if true sort by lang1, otherwise by lang2
+     */
+    public CardSortOrder(boolean byLang1){
+        this.byLang1 = byLang1;
+        collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+    }
+
+    /**
+     * @param card the card
+     * @return simple form of the sorted word of this card
+     */
+    private String getSortedWord(Card card){
+        return byLang1 ? card.getSimpleLang1() : card.getSimpleLang2();
+    }
+
+    /**
+     * @param card the card
+     * @return true if the cached key does not fit to the current word of the card
+     */
+    private boolean isStale(Card card){
+        SortKey sortKey = keys.get(card);
+        if(sortKey == null){
+            return true;
+        }
+        String word = getSortedWord(card);
+        return word == null ? sortKey.source != null : ! word.equals(sortKey.source);
+    }
+
+    /**
+     * @param card the card
+     * @return up to date sort key of the card
+     */
+    private SortKey getKey(Card card){
+        SortKey sortKey = keys.get(card);
+        String word = getSortedWord(card);
+        if(sortKey != null && (word == null ? sortKey.source == null : word.equals(sortKey.source))){
+            return sortKey;
+        }
+        if(sortKey == null){
+            sortKey = new SortKey();
+            keys.put(card, sortKey);
+        }
+        sortKey.source = word;
+        sortKey.key = (word == null || word.length() == 0) ? null : collator.getCollationKey(word);
+        return sortKey;
+    }
+
+    /**
+     * @return comparator using the cached keys
+     */
+    public Comparator<Card> getComparator(){
+        return comparator;
+    }
+
+    /**
+     * Sort the entire list.
+     * @param cards list to sort in place
+     */
+    public void sort(List<Card> cards){
+        Collections.sort(cards, comparator);
+    }
+
+    /**
+     * Insert a card into a sorted list at the position found by binary search.
+     * @param sorted list sorted with this order
+     * @param card the card to insert
+     */
+    public void insert(List<Card> sorted, Card card){
+        int pos = Collections.binarySearch(sorted, card, comparator);
+        if(pos < 0){
+            pos = -pos-1;
+        }
+        sorted.add(pos, card);
+    }
+
+    /**
+     * Drop the cached key of a card, e.g. when the card was deleted.
+     * @param card the removed card
+     */
+    public void forget(Card card){
+        keys.remove(card);
+    }
+
+    /**
+     * Update a sorted list, so that it contains exactly newCards in sorted order.
+     * Cards which are still contained and unchanged keep their position. Only new
+     * and edited cards are inserted again.
+     * @param sorted list sorted with this order, modified in place
+     * @param newCards the cards, which should be contained in sorted afterwards
+     */
+    public void update(List<Card> sorted, List<Card> newCards){
+        Map<Card, Boolean> wanted = new IdentityHashMap<Card, Boolean>();
+        for(Card card: newCards){
+            wanted.put(card, Boolean.TRUE);
+        }
+
+        Map<Card, Boolean> kept = new IdentityHashMap<Card, Boolean>();
+        List<Card> remaining = new ArrayList<Card>(sorted.size());
+        for(Card card: sorted){
+            if(wanted.containsKey(card) && !kept.containsKey(card) && !isStale(card)){
+                remaining.add(card);
+                kept.put(card, Boolean.TRUE);
+            }
+            else if(! wanted.containsKey(card)){
+                forget(card);
+            }
+        }
+
+        List<Card> toInsert = new ArrayList<Card>();
+        for(Card card: newCards){
+            if(! kept.containsKey(card)){
+                toInsert.add(card);
+                kept.put(card, Boolean.TRUE);
+            }
+        }
+
+        sorted.clear();
+        sorted.addAll(remaining);
+        if(toInsert.size() > newCards.size()/FULLSORTDIVISOR){
+            sorted.addAll(toInsert);
+            sort(sorted);
+        }
+        else {
+            for (Card card : toInsert) {
+                insert(sorted, card);
+            }
+        }
+    }
+}
@@ -40,6 +40,7 @@ import java.io.Serializable;
 import java.io.StreamCorruptedException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Scanner;
 
@@ -84,12 +85,84 @@ public class Dictionary implements Serializable {
      */
     public void setBoxcount(int boxcount) {
         this.boxcount = boxcount;
+        modified();
     }
 
+    /**
+     * Number of boxes of new dictionaries
+     */
+    public static final int DEFAULTBOXCOUNT = 5;
+
     /**
      * maximum value for cards' boxes in this dictionary
      */
-    private int boxcount = 5;
+    private int boxcount = DEFAULTBOXCOUNT;
+
+    /**
+     * Names of the schedulers, which can be chosen for a dictionary
+     */
+    public static final String SCHEDULERLEITNER = "leitner";
+    public static final String SCHEDULERSM2 = "sm2";
+
+    /**
+     * Name of the scheduler of this dictionary, stored with the dictionary
+     */
+    private String schedulerName = SCHEDULERLEITNER;
+
+    /**
+     * Name of the SessionOrder.Strategy for the test sessions of this dictionary, stored with the dictionary
+     */
+    private String sessionOrder = SessionOrder.Strategy.RANDOM.name();
+
+    /**
+     * Incremented by every change of the card list, the languages or the boxcount done by this class
+     */
+    private transient int modCount = 0;
+
+    /**
+     * Incremented by every change of this dictionary and of its cards, see getVersion.
+     * Stored with the dictionary, so that it keeps growing across loads.
+     */
+    private long revision = 0;
+
+    /**
+     * Revision at the last save or load, only if savedRevisionValid
+     */
+    private transient long savedRevision;
+    private transient boolean savedRevisionValid = false;
+
+    /**
+     * Cards ordered by due time, built on first use
+     */
+    private transient DueQueue dueQueue;
+    private transient int dueQueueModCount;
+    private transient int dueQueueSize;
+
+    /**
+     * Sampler for mixed sessions, valid as long as modCount and the number of cards did not change
+     */
+    private transient BoxSampler boxSampler;
+    private transient int boxSamplerModCount;
+    private transient int boxSamplerSize;
+
+    /**
+     * Distractors for multiple choice tests with answers in lang1 or lang2, valid as long as
+     * modCount and the number of cards did not change
+     */
+    private transient DistractorIndex distractorIndex;
+    private transient boolean distractorIndexLang1;
+    private transient int distractorIndexModCount;
+    private transient int distractorIndexSize;
+
+    /**
+     * Learning statistics, loaded on first use
+     */
+    private transient LearningStatistics statistics;
+
+    /**
+     * Scheduler used by reviewCard, LeitnerScheduler if not set
+     */
+    private transient ReviewScheduler scheduler;
 
     /**
      *
@@ -140,11 +213,24 @@ public class Dictionary implements Serializable {
                 c.setType(card.getType());
                 c.setLesson(card.getLesson());
                 c.setLang2(card.getLang2());
+                //Type, lesson and answer are indexed for distractors and mixed sessions
+                boolean dueQueueValid = isDueQueueValid();
+                modified();
+                if(dueQueueValid){
+                    dueQueueUpdated();
+                }
                 return;
             }
         }
         //card not yet included => add
+        boolean dueQueueValid = isDueQueueValid();
         cards.add(card);
+        card.setDictionary(this);
+        modified();
+        if(dueQueueValid){
+            dueQueue.add(card);
+            dueQueueUpdated();
+        }
     }
 
     /**
@@ -155,7 +241,14 @@ public class Dictionary implements Serializable {
         if(pos< 0 || pos >= cards.size()){
             return;
         }
-        cards.remove(pos);
+        boolean dueQueueValid = isDueQueueValid();
+        Card removed = cards.remove(pos);
+        removeFromDictionary(removed);
+        modified();
+        if(dueQueueValid){
+            dueQueue.remove(removed);
+            dueQueueUpdated();
+        }
     }
 
     /**
@@ -163,7 +256,41 @@ public class Dictionary implements Serializable {
      * @param card
      */
     public void deleteCard(Card card){
-        cards.remove(card);
+        boolean dueQueueValid = isDueQueueValid();
+        if(cards.remove(card)){
+            removeFromDictionary(card);
+            modified();
+            if(dueQueueValid){
+                dueQueue.remove(card);
+                dueQueueUpdated();
+            }
+        }
+    }
+
+    /**
+     * @param card a card removed from the card list
+     */
+    private void removeFromDictionary(Card card){
+        if(card != null && card.getDictionary() == this){
+            card.setDictionary(null);
+        }
+    }
+
+    /**
+     * Called by every change of the card list, the languages, the boxcount or the settings done by this class.
+     * Invalidates the cached indexes and counts as change of the content.
+     */
+    private void modified(){
+        modCount++;
+        revision++;
+    }
+
+    /**
+     * Called by a card of this dictionary after one of its values was set.
+     * @param card the changed card
+     */
+    void cardChanged(Card card){
+        revision++;
     }
 
     /**
@@ -220,6 +347,7 @@ public class Dictionary implements Serializable {
      */
     public void setBaseLanguage(String language) {
         this.baseLanguage = language;
+        modified();
     }
 
     /**
@@ -236,6 +364,7 @@ public class Dictionary implements Serializable {
      */
     public void setLanguage(String language) {
         this.language = language;
+        modified();
     }
 
     /**
@@ -252,6 +381,15 @@ public class Dictionary implements Serializable {
      * @return name+"."+ending as string
      */
     public String getFilenameForStore(String ending){
+        return getFilenameForStore(name, ending);
+    }
+
+    /**
+     * @param name name of a dictionary, might be null
+     * @param ending e.g. "txt"
+     * @return name+"."+ending as string
+     */
+    public static String getFilenameForStore(String name, String ending){
         String filename = "dictionary."+ending;
         if(name != null){
             filename = name+"."+ending;
@@ -290,6 +428,9 @@ public class Dictionary implements Serializable {
         if(file.exists()){
             file.delete();
         }
+        ReviewLog.forDictionary(context, this).delete();
+        LearningStatistics.getFile(context, getName()).delete();
+        statistics = null;
     }
 
     /**
@@ -298,8 +439,48 @@ public class Dictionary implements Serializable {
      * @return true on success, false on error
      */
     public boolean save(Context context){
-        File result = exportToFile(getFilenameForStore(), context, false);
-        return result != null;
+        long version = revision;
+        //Write a temporary file first and replace the old file with it, so that
+        //the stored dictionary is either the old or the new one, even if writing fails
+        String filename = getFilenameForStore();
+        File tmp = exportToFile(filename+".tmp", context, false);
+        if(tmp == null){
+            return false;
+        }
+        if(! tmp.renameTo(new File(context.getFilesDir(), filename))){
+            tmp.delete();
+            return false;
+        }
+        markSaved(version);
+        return true;
+    }
+
+    /**
+     * @param version the revision, which is stored in the file now
+     */
+    private void markSaved(long version){
+        savedRevision = version;
+        savedRevisionValid = true;
+    }
+
+    /**
+     * @return true, if this dictionary was changed since it was saved or loaded, or if it was never saved
+     */
+    public boolean isDirty(){
+        return ! savedRevisionValid || savedRevision != revision;
+    }
+
+    /**
+     * Called by BoxTransitions, after a card of this dictionary moved into another box.
+     * Updates the box lists of the mixed session sampler and marks the dictionary as changed.
+     * @param card the moved card
+     * @param oldBox box of the card before the move
+     */
+    void cardMoved(Card card, int oldBox){
+        revision++;
+        if(boxSampler != null){
+            boxSampler.moved(card, oldBox);
+        }
     }
 
     /**
@@ -334,6 +515,17 @@ public class Dictionary implements Serializable {
         language = other.language;
         name = other.name;
         boxcount = other.boxcount;
+        schedulerName = other.schedulerName;
+        sessionOrder = other.sessionOrder;
+        for(Card card: cards){
+            if(card != null){
+                card.setDictionary(this);
+            }
+        }
+        scheduler = null;
+        modCount++;
+        revision = other.revision;
+        dueQueue = null;
     }
 
     /**
@@ -347,6 +539,9 @@ public class Dictionary implements Serializable {
         Dictionary loaded = loadFromUri(uri, true, context);
 
         initWithDictionary(loaded);
+        if(loaded != null){
+            markSaved(revision);
+        }
     }
 
     /**
@@ -383,6 +578,236 @@ public class Dictionary implements Serializable {
         return result;
     }
 
+    /**
+     * Sort all cards into their boxes in a single pass over the cards.
+     * @return list with getBoxcount() entries, entry i contains the cards of box i+1 in the
+     *         order of the dictionary. Cards in boxes outside of 1..getBoxcount() are not contained.
+     */
+    public ArrayList<ArrayList<Card>> getCardsByBox(){
+        ArrayList<ArrayList<Card>> result = new ArrayList<ArrayList<Card>>(boxcount);
+        for(int i=0; i<boxcount; i++){
+            result.add(new ArrayList<Card>());
+        }
+        for(Card card: cards){
+            if(card == null){
+                continue;
+            }
+            int box = card.getBox();
+            if(box >= 1 && box <= boxcount){
+                result.get(box-1).add(card);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a sampler drawing cards from all boxes. The sampler is reused, until cards are added
+     * or deleted or the boxcount changes. Cards moved into other boxes are handled by the sampler itself.
+     * @param weights weight of each box, entry i for box i+1, null for BoxSampler.getDefaultWeights
+     * @return sampler for this dictionary
+     */
+    public BoxSampler getBoxSampler(double[] weights){
+        if(boxSampler == null || boxSamplerModCount != modCount || boxSamplerSize != cards.size()){
+            boxSampler = new BoxSampler(getCardsByBox(), weights);
+            boxSamplerModCount = modCount;
+            boxSamplerSize = cards.size();
+        }
+        else{
+            boxSampler.setWeights(weights);
+        }
+        return boxSampler;
+    }
+
+    /**
+     * Get the learning statistics of this dictionary. They are loaded once and kept,
+     * afterwards the box counts are only counted again, if the version of the dictionary changed.
+     * @param context context of the app
+     * @return the statistics, never null
+     */
+    public LearningStatistics getStatistics(Context context){
+        if(statistics == null){
+            statistics = LearningStatistics.load(context, this);
+        }
+        else{
+            statistics.sync(this);
+        }
+        return statistics;
+    }
+
+    /**
+     * Get the index for distractors of multiple choice tests. The index is reused, until
+     * cards are added or deleted or the language of the answers changes.
+     * @param lang1Answers if true the answers are lang1, otherwise lang2
+     * @return index for this dictionary
+     */
+    public DistractorIndex getDistractorIndex(boolean lang1Answers){
+        if(distractorIndex == null || distractorIndexLang1 != lang1Answers
+                || distractorIndexModCount != modCount || distractorIndexSize != cards.size()){
+            distractorIndex = new DistractorIndex(cards, lang1Answers);
+            distractorIndexLang1 = lang1Answers;
+            distractorIndexModCount = modCount;
+            distractorIndexSize = cards.size();
+        }
+        return distractorIndex;
+    }
+
+    /**
+     * The version is a revision counter. It is incremented, whenever cards are added, deleted or edited, also if a card
+     * is moved into another box, and if languages, boxcount or settings are set. Cards inform their dictionary
+     * about edits, so this takes constant time.
+     * The revision is stored with the dictionary, so that it also grows across saving and loading.
+     * @return version of the content of this dictionary, a changed dictionary never gets a version used before
+     */
+    public long getVersion(){
+        return revision;
+    }
+
+    /**
+     * @return true, if the due queue exists and modCount and the number of cards did not change since it was updated
+     */
+    private boolean isDueQueueValid(){
+        return dueQueue != null && dueQueueModCount == modCount && dueQueueSize == cards.size();
+    }
+
+    /**
+     * Mark the due queue as valid after it was updated for a change of the cards
+     */
+    private void dueQueueUpdated(){
+        dueQueueModCount = modCount;
+        dueQueueSize = cards.size();
+    }
+
+    /**
+     * @return queue of all cards ordered by due time, rebuilt if modCount or the number of cards changed
+     *         without updating the queue, e.g. if cards were added or removed directly in the list returned by getCards
+     */
+    private DueQueue getDueQueue(){
+        if(! isDueQueueValid()){
+            dueQueue = new DueQueue(cards);
+            dueQueueUpdated();
+        }
+        return dueQueue;
+    }
+
+    /**
+     * @return scheduler used by reviewCard, created from getSchedulerName if not set
+     */
+    public ReviewScheduler getScheduler(){
+        if(scheduler == null){
+            if(SCHEDULERSM2.equals(schedulerName)){
+                scheduler = new SM2Scheduler();
+            }
+            else {
+                scheduler = new LeitnerScheduler();
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return name of the scheduler of this dictionary, SCHEDULERLEITNER or SCHEDULERSM2
+     */
+    public String getSchedulerName(){
+        return schedulerName == null ? SCHEDULERLEITNER : schedulerName;
+    }
+
+    /**
+     * Choose the scheduler of this dictionary, it is stored with the dictionary.
+     * @param schedulerName SCHEDULERLEITNER or SCHEDULERSM2, unknown names select SCHEDULERLEITNER
+     */
+    public void setSchedulerName(String schedulerName){
+        if(! SCHEDULERSM2.equals(schedulerName)){
+            schedulerName = SCHEDULERLEITNER;
+        }
+        if(! schedulerName.equals(this.schedulerName)){
+            this.schedulerName = schedulerName;
+            scheduler = null;
+            modified();
+        }
+    }
+
+    /**
+     * @return strategy for ordering the cards of a test session, RANDOM if not set
+     */
+    public SessionOrder.Strategy getSessionOrder(){
+        return SessionOrder.parseStrategy(sessionOrder);
+    }
+
+    /**
+     * Choose the order of the cards in test sessions, it is stored with the dictionary.
+     * @param strategy the strategy, null selects RANDOM
+     */
+    public void setSessionOrder(SessionOrder.Strategy strategy){
+        if(strategy == null){
+            strategy = SessionOrder.Strategy.RANDOM;
+        }
+        if(strategy != getSessionOrder()){
+            sessionOrder = strategy.name();
+            modified();
+        }
+    }
+
+    /**
+     * @param scheduler scheduler used by reviewCard, null for the default LeitnerScheduler
+     */
+    public void setScheduler(ReviewScheduler scheduler){
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Update the schedule of a card of this dictionary after it was answered.
+     * @param card the answered card
+     * @param grade grade of the answer, see ReviewScheduler
+     * @param now time of the answer in ms since epoch
+     */
+    public void reviewCard(Card card, int grade, long now){
+        getScheduler().schedule(card, grade, now);
+        updateDue(card);
+    }
+
+    /**
+     * Call this, whenever the schedule of a card was changed without reviewCard.
+     * @param card card of this dictionary with a changed schedule
+     */
+    public void updateDue(Card card){
+        if(isDueQueueValid()){
+            dueQueue.update(card);
+        }
+    }
+
+    /**
+     * Get the cards to repeat next without scanning all cards.
+     * @param count maximum number of returned cards
+     * @param now current time in ms since epoch
+     * @return up to count cards due until now, the longest due first
+     */
+    public List<Card> getDueCards(int count, long now){
+        return getDueQueue().getFirst(count, now);
+    }
+
+    /**
+     * @param until time in ms since epoch, e.g. getEndOfDay(now)
+     * @return number of cards due until this time, O(1) if called repeatedly with the same time
+     */
+    public int getDueCount(long until){
+        return getDueQueue().countDue(until);
+    }
+
+    /**
+     * @param now time in ms since epoch
+     * @return last ms of the day containing now in the default time zone
+     */
+    public static long getEndOfDay(long now){
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis()-1;
+    }
+
     /**
      *
      * @return string representation of this card
@@ -395,6 +820,16 @@ public class Dictionary implements Serializable {
         result.append("\n");
         result.append("boxcount:"+boxcount);
         result.append("\n");
+        result.append("revision:"+revision);
+        result.append("\n");
+        if(! SCHEDULERLEITNER.equals(getSchedulerName())){
+            result.append("scheduler:"+getSchedulerName());
+            result.append("\n");
+        }
+        if(getSessionOrder() != SessionOrder.Strategy.RANDOM){
+            result.append("order:"+getSessionOrder().name());
+            result.append("\n");
+        }
         for(Card card: cards){
             String exportedCard = card.export();
             result.append(exportedCard);
@@ -570,6 +1005,7 @@ public class Dictionary implements Serializable {
             result.sanitizeLanguagesToDiffer();
         }
         int cardStartIndex = languagesFoundInFirstLine ? 1 : 2;
+        long revision = -1;
         for(int i=cardStartIndex; i<lines.length; i++){
             String boxcountKey = "boxcount:";
             String boxcountcellValue = sanitizeSingleValueInLine(lines[i]);
@@ -578,11 +1014,34 @@ public class Dictionary implements Serializable {
                 result.setBoxcount(boxCountParsedNumber);
                 continue;
             }
+            String revisionKey = "revision:";
+            if(boxcountcellValue.indexOf(revisionKey) == 0){
+                try {
+                    revision = Long.parseLong(boxcountcellValue.substring(revisionKey.length()).trim());
+                } catch (NumberFormatException e) {
+                    //Changes are counted from 0 again
+                }
+                continue;
+            }
+            String schedulerKey = "scheduler:";
+            if(boxcountcellValue.indexOf(schedulerKey) == 0){
+                result.setSchedulerName(boxcountcellValue.substring(schedulerKey.length()).trim());
+                continue;
+            }
+            String orderKey = "order:";
+            if(boxcountcellValue.indexOf(orderKey) == 0){
+                result.setSessionOrder(SessionOrder.parseStrategy(boxcountcellValue.substring(orderKey.length()).trim()));
+                continue;
+            }
             Card card = Card.loadJSONOrCSV(lines[i], loadAll);
             if(card != null) {
                 result.addCard(card);
             }
         }
+        //Adding the cards counted as changes, continue with the stored revision instead
+        if(result != null && revision >= 0){
+            result.revision = revision;
+        }
 
         return result;
     }
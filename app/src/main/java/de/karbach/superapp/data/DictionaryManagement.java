@@ -21,6 +21,7 @@ package de.karbach.superapp.data;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -306,6 +307,16 @@ public class DictionaryManagement {
             return false;
         }
 
+        //Keep the review history and statistics, deleteDictionary would remove them
+        File oldLog = ReviewLog.forDictionary(context, dict).getFile();
+        if(oldLog.exists()){
+            oldLog.renameTo(ReviewLog.forName(context, newName).getFile());
+        }
+        File oldStats = LearningStatistics.getFile(context, oldname);
+        if(oldStats.exists()){
+            oldStats.renameTo(LearningStatistics.getFile(context, newName));
+        }
+
         deleteDictionary(oldname);
 
         dict.setName(newName);
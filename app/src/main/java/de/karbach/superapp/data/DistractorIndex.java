@@ -0,0 +1,240 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Picks wrong answers (distractors) for multiple choice tests.
+ *
+ * The cards are sorted once into buckets by type, by lesson and by the length of their
+ * answer. Distractors for a card are drawn at random from the buckets of the card, so that
+ * they are plausible, and from all cards, if the buckets do not contain enough different
+ * answers. Answers, which the AnswerMatcher of the card would accept or count as near miss,
+ * are skipped. Each draw is O(1) with a bounded number of attempts, the cards are never
+ * scanned per question.
+ */
+public class DistractorIndex {
+
+    /**
+     * Answers with more characters share the length bucket of this length
+     */
+    public static final int MAXLENGTH = 32;
+
+    /**
+     * Number of random draws from one bucket, before the next bucket is used
+     */
+    private static final int MAXATTEMPTS = 4;
+
+    /**
+     * If there are at most this many cards, missing distractors are searched in all cards
+     */
+    private static final int SCANLIMIT = 64;
+
+    /**
+     * If true the answers are lang1, otherwise lang2
+     */
+    private boolean lang1Answers;
+
+    /**
+     * All cards
+     */
+    private List<Card> all;
+
+    /**
+     * Cards by simple type and simple lesson, cards without type or lesson are not contained
+     */
+    private Map<String, List<Card>> byType = new HashMap<String, List<Card>>();
+    private Map<String, List<Card>> byLesson = new HashMap<String, List<Card>>();
+
+    /**
+     * Entry i contains the cards with answers of length i, see MAXLENGTH
+     */
+    private List<List<Card>> byLength = new ArrayList<List<Card>>();
+
+    /**
+     * @param cards the cards of the dictionary, the list is copied
+     * @param lang1Answers if true the answers are lang1, otherwise lang2
+     */
+    public DistractorIndex(List<Card> cards, boolean lang1Answers){
+        this.lang1Answers = lang1Answers;
+        all = new ArrayList<Card>(cards.size());
+        for(int i=0; i<=MAXLENGTH; i++){
+            byLength.add(new ArrayList<Card>());
+        }
+        for(Card card: cards){
+            String answer = getAnswer(card);
+            if(answer == null || answer.length() == 0){
+                continue;
+            }
+            all.add(card);
+            addToBucket(byType, card.getSimpleType(), card);
+            addToBucket(byLesson, card.getSimpleLesson(), card);
+            byLength.get(getLengthBucket(answer)).add(card);
+        }
+    }
+
+    private static void addToBucket(Map<String, List<Card>> buckets, String key, Card card){
+        if(key == null || key.length() == 0){
+            return;
+        }
+        List<Card> bucket = buckets.get(key);
+        if(bucket == null){
+            bucket = new ArrayList<Card>();
+            buckets.put(key, bucket);
+        }
+        bucket.add(card);
+    }
+
+    /**
+     * @param answer an answer
+     * @return index in byLength
+     */
+    private static int getLengthBucket(String answer){
+        return Math.min(answer.trim().length(), MAXLENGTH);
+    }
+
+    /**
+     * @param card a card
+     * @return the answer of the card, which is lang1 or lang2
+     */
+    public String getAnswer(Card card){
+        if(card == null){
+            return null;
+        }
+        String result = lang1Answers ? card.getLang1() : card.getLang2();
+        return result == null ? null : result.trim();
+    }
+
+    /**
+     * Draw distractors for a card.
+     * @param card the tested card
+     * @param count number of distractors wanted
+     * @param random source of randomness
+     * @return up to count different answers, which differ from the answer of the card
+     */
+    public List<String> getDistractors(Card card, int count, Random random){
+        List<String> result = new ArrayList<String>(count);
+        List<String> folded = new ArrayList<String>(count);
+        AnswerMatcher matcher = new AnswerMatcher(getAnswer(card), AnswerMatcher.DEFAULTMAXDISTANCE);
+
+        List<Card> typeBucket = byType.get(card.getSimpleType());
+        List<Card> lessonBucket = byLesson.get(card.getSimpleLesson());
+        String answer = getAnswer(card);
+        List<Card> lengthBucket = byLength.get(getLengthBucket(answer == null ? "" : answer));
+        List<List<Card>> preferred = new ArrayList<List<Card>>();
+        preferred.add(typeBucket);
+        preferred.add(lengthBucket);
+        preferred.add(lessonBucket);
+
+        for(int slot=0; slot<count; slot++){
+            //Start each slot with another kind of bucket, so that the distractors are similar in different ways
+            String found = null;
+            for(int i=0; i<preferred.size() && found == null; i++){
+                found = draw(preferred.get((slot+i) % preferred.size()), card, matcher, folded, random);
+            }
+            if(found == null){
+                found = draw(all, card, matcher, folded, random);
+            }
+            if(found == null && all.size() <= SCANLIMIT){
+                found = scan(card, matcher, folded, random);
+            }
+            if(found == null){
+                break;
+            }
+            result.add(found);
+        }
+        return result;
+    }
+
+    /**
+     * Draw a distractor from a bucket
+     * @param bucket the bucket, may be null
+     * @param card the tested card
+     * @param matcher matcher for the answer of the card
+     * @param folded folded answers, which must not be used, the found answer is added
+     * @param random source of randomness
+     * @return the answer or null, if none was found within MAXATTEMPTS
+     */
+    private String draw(List<Card> bucket, Card card, AnswerMatcher matcher, List<String> folded, Random random){
+        if(bucket == null || bucket.size() == 0){
+            return null;
+        }
+        for(int i=0; i<MAXATTEMPTS; i++){
+            String found = accept(bucket.get(random.nextInt(bucket.size())), card, matcher, folded);
+            if(found != null){
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check all cards starting at a random position, only used for small dictionaries
+     */
+    private String scan(Card card, AnswerMatcher matcher, List<String> folded, Random random){
+        if(all.isEmpty()){
+            return null;
+        }
+        int start = random.nextInt(all.size());
+        for(int i=0; i<all.size(); i++){
+            String found = accept(all.get((start+i) % all.size()), card, matcher, folded);
+            if(found != null){
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A distractor must not be accepted or be a near miss for the answer of the card.
+     * @return the answer of candidate, if it can be used as distractor, otherwise null
+     */
+    private String accept(Card candidate, Card card, AnswerMatcher matcher, List<String> folded){
+        if(candidate == card){
+            return null;
+        }
+        String answer = getAnswer(candidate);
+        String foldedAnswer = AnswerMatcher.fold(answer);
+        if(foldedAnswer.length() == 0 || folded.contains(foldedAnswer)
+                || matcher.check(answer).verdict != AnswerMatcher.Verdict.WRONG){
+            return null;
+        }
+        folded.add(foldedAnswer);
+        return answer;
+    }
+
+    /**
+     * Get the options of a multiple choice question in random order.
+     * @param card the tested card
+     * @param count number of options including the correct answer
+     * @param random source of randomness
+     * @return the options, fewer than count if the dictionary has not enough different answers
+     */
+    public List<String> getChoices(Card card, int count, Random random){
+        List<String> result = getDistractors(card, count-1, random);
+        result.add(getAnswer(card));
+        SessionOrder.shuffle(result, random);
+        return result;
+    }
+}
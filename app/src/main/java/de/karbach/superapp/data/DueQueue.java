@@ -0,0 +1,307 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Indexed binary min heap of cards ordered by their due time. Each card knows its
+ * position in the heap, so that cards can be removed or moved after a review in O(log n).
+ * The due time of each card is stored with it, the heap must be updated with update,
+ * whenever the schedule of a contained card changes.
+ *
+ * The number of cards due until a given time is cached, so that repeated
+ * queries for the same time, e.g. the end of today, take O(1).
+ */
+class DueQueue {
+
+    /**
+     * The heap, the card with the smallest due time is at index 0
+     */
+    private ArrayList<Card> heap = new ArrayList<Card>();
+
+    /**
+     * Due time of the card at the same index in heap
+     */
+    private long[] keys = new long[16];
+
+    /**
+     * Index of each card in heap, cards are compared by identity
+     */
+    private Map<Card, Integer> positions = new IdentityHashMap<Card, Integer>();
+
+    /**
+     * Time, for which dueCount is valid, only if dueCountValid
+     */
+    private long dueCountTime;
+    private int dueCount;
+    private boolean dueCountValid = false;
+
+    /**
+     * Build the heap for all cards in O(n).
+     * @param cards the cards to add, null values and duplicates are ignored
+     */
+    public DueQueue(List<Card> cards){
+        for(Card card: cards){
+            if(card == null || positions.containsKey(card)){
+                continue;
+            }
+            int index = heap.size();
+            ensureCapacity(index+1);
+            heap.add(card);
+            keys[index] = card.getDue();
+            positions.put(card, index);
+        }
+        for(int i=heap.size()/2-1; i>=0; i--){
+            siftDown(i);
+        }
+    }
+
+    /**
+     * @return number of cards in the queue
+     */
+    public int size(){
+        return heap.size();
+    }
+
+    /**
+     * @param card the card
+     * @return true, if the card is contained
+     */
+    public boolean contains(Card card){
+        return positions.containsKey(card);
+    }
+
+    /**
+     * @return card with the smallest due time, null if empty
+     */
+    public Card peek(){
+        if(heap.isEmpty()){
+            return null;
+        }
+        return heap.get(0);
+    }
+
+    /**
+     * Add a card, if it is not yet contained
+     * @param card the new card
+     */
+    public void add(Card card){
+        if(card == null || positions.containsKey(card)){
+            return;
+        }
+        int index = heap.size();
+        ensureCapacity(index+1);
+        heap.add(card);
+        keys[index] = card.getDue();
+        positions.put(card, index);
+        countAdded(keys[index]);
+        siftUp(index);
+    }
+
+    /**
+     * Remove a card
+     * @param card the removed card
+     */
+    public void remove(Card card){
+        Integer index = positions.remove(card);
+        if(index == null){
+            return;
+        }
+        countRemoved(keys[index]);
+        int last = heap.size()-1;
+        Card lastCard = heap.remove(last);
+        if(index == last){
+            return;
+        }
+        heap.set(index, lastCard);
+        keys[index] = keys[last];
+        positions.put(lastCard, index);
+        siftDown(index);
+        siftUp(positions.get(lastCard));
+    }
+
+    /**
+     * Move a card to the position fitting to its current due time
+     * @param card card, whose schedule changed
+     */
+    public void update(Card card){
+        Integer index = positions.get(card);
+        if(index == null){
+            return;
+        }
+        long oldKey = keys[index];
+        long newKey = card.getDue();
+        if(oldKey == newKey){
+            return;
+        }
+        countRemoved(oldKey);
+        countAdded(newKey);
+        keys[index] = newKey;
+        if(newKey < oldKey){
+            siftUp(index);
+        }
+        else{
+            siftDown(index);
+        }
+    }
+
+    /**
+     * Get the first cards in order of their due time without removing them. Only visits
+     * O(count) nodes of the heap, so this takes O(count log count).
+     * @param count maximum number of cards
+     * @param until only cards due until this time are returned
+     * @return up to count cards due until the given time, ordered by due time
+     */
+    public List<Card> getFirst(int count, long until){
+        List<Card> result = new ArrayList<Card>();
+        if(count <= 0 || heap.isEmpty()){
+            return result;
+        }
+        PriorityQueue<Integer> candidates = new PriorityQueue<Integer>(Math.min(count, heap.size())+1, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                long lkey = keys[lhs];
+                long rkey = keys[rhs];
+                return lkey < rkey ? -1 : (lkey == rkey ? 0 : 1);
+            }
+        });
+        candidates.add(0);
+        while(result.size() < count && ! candidates.isEmpty()){
+            int index = candidates.poll();
+            if(keys[index] > until){
+                break;
+            }
+            result.add(heap.get(index));
+            int child = 2*index+1;
+            if(child < heap.size()){
+                candidates.add(child);
+            }
+            if(child+1 < heap.size()){
+                candidates.add(child+1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count the cards due until a given time. The count is cached and kept up to date
+     * by add, remove and update, so repeated calls with the same time take O(1).
+     * Otherwise only the O(k) nodes of the k due cards are visited.
+     * @param until time in ms since epoch
+     * @return number of cards due until this time
+     */
+    public int countDue(long until){
+        if(dueCountValid && dueCountTime == until){
+            return dueCount;
+        }
+        int result = 0;
+        if(! heap.isEmpty()) {
+            int[] stack = new int[heap.size()];
+            int stackSize = 0;
+            stack[stackSize++] = 0;
+            while (stackSize > 0) {
+                int index = stack[--stackSize];
+                if (keys[index] > until) {
+                    continue;
+                }
+                result++;
+                int child = 2 * index + 1;
+                if (child < heap.size()) {
+                    stack[stackSize++] = child;
+                }
+                if (child + 1 < heap.size()) {
+                    stack[stackSize++] = child + 1;
+                }
+            }
+        }
+        dueCountTime = until;
+        dueCount = result;
+        dueCountValid = true;
+        return result;
+    }
+
+    private void countAdded(long key){
+        if(dueCountValid && key <= dueCountTime){
+            dueCount++;
+        }
+    }
+
+    private void countRemoved(long key){
+        if(dueCountValid && key <= dueCountTime){
+            dueCount--;
+        }
+    }
+
+    private void ensureCapacity(int capacity){
+        if(keys.length < capacity){
+            long[] newKeys = new long[Math.max(capacity, keys.length*2)];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            keys = newKeys;
+        }
+    }
+
+    private void siftUp(int index){
+        while(index > 0){
+            int parent = (index-1)/2;
+            if(keys[parent] <= keys[index]){
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index){
+        int size = heap.size();
+        while(true){
+            int smallest = index;
+            int left = 2*index+1;
+            int right = left+1;
+            if(left < size && keys[left] < keys[smallest]){
+                smallest = left;
+            }
+            if(right < size && keys[right] < keys[smallest]){
+                smallest = right;
+            }
+            if(smallest == index){
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j){
+        Card cardi = heap.get(i);
+        Card cardj = heap.get(j);
+        heap.set(i, cardj);
+        heap.set(j, cardi);
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        positions.put(cardj, i);
+        positions.put(cardi, j);
+    }
+}
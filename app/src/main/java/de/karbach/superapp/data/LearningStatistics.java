@@ -0,0 +1,379 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Learning statistics of one dictionary: cards per box over time, success rate per box
+ * and lesson, reviews per day and retention depending on the time since the last review.
+ *
+ * The statistics are aggregates, which are updated with each committed test session
+ * (see SessionResults.commit) and stored in a separate small file, whose size does not
+ * depend on the number of cards. Showing them neither scans the cards nor the ReviewLog.
+ * Only the current number of cards per box is counted from the dictionary, whenever it
+ * changed outside of a committed session.
+ */
+public class LearningStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * File extension of statistics files
+     */
+    public static final String ENDING = "stats";
+
+    /**
+     * Index of the number of reviews and of the number of correct reviews in the counters
+     */
+    public static final int REVIEWS = 0;
+    public static final int CORRECT = 1;
+
+    /**
+     * Lower bounds in days of the intervals since the last review, for which the retention is counted
+     */
+    public static final int[] RETENTIONBUCKETS = new int[]{1, 2, 4, 8, 15, 31};
+
+    /**
+     * Current number of cards in each box, entry i for box i+1
+     */
+    private int[] boxCounts = new int[0];
+
+    /**
+     * Dictionary.getVersion, for which boxCounts is up to date. The version is stored with
+     * the dictionary, so the counts stay valid after loading both files.
+     */
+    private long version = -1;
+
+    /**
+     * Counters per box before the answer, entry i for box i+1
+     */
+    private int[][] perBox = new int[0][];
+
+    /**
+     * Counters per lesson, cards without lesson use ""
+     */
+    private HashMap<String, int[]> perLesson = new HashMap<String, int[]>();
+
+    /**
+     * Counters per day, see getDay
+     */
+    private TreeMap<Integer, int[]> perDay = new TreeMap<Integer, int[]>();
+
+    /**
+     * Cards per box at the end of each day with reviews
+     */
+    private TreeMap<Integer, int[]> boxCountsPerDay = new TreeMap<Integer, int[]>();
+
+    /**
+     * Counters per entry of RETENTIONBUCKETS
+     */
+    private int[][] retention = new int[RETENTIONBUCKETS.length][2];
+
+    /**
+     * Load the statistics of a dictionary. Creates new statistics, if none are stored.
+     * @param context context of the app
+     * @param dictionary the dictionary
+     * @return the statistics, never null
+     */
+    public static LearningStatistics load(Context context, Dictionary dictionary){
+        LearningStatistics result = null;
+        File file = getFile(context, dictionary.getName());
+        if(file.exists()){
+            ObjectInputStream in = null;
+            try {
+                in = new ObjectInputStream(new FileInputStream(file));
+                result = (LearningStatistics) in.readObject();
+            } catch (Exception e) {
+                result = null;
+            }
+            finally {
+                if(in != null){
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+        if(result == null){
+            result = new LearningStatistics();
+        }
+        result.sync(dictionary);
+        return result;
+    }
+
+    /**
+     * Store the statistics of a dictionary, replaces the old file only on success
+     * @param context context of the app
+     * @param dictionary the dictionary
+     * @return true on success
+     */
+    public boolean save(Context context, Dictionary dictionary){
+        File file = getFile(context, dictionary.getName());
+        File tmp = new File(file.getPath()+".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new FileOutputStream(tmp));
+            out.writeObject(this);
+            out.close();
+            out = null;
+            if(! tmp.renameTo(file)){
+                tmp.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            tmp.delete();
+            return false;
+        }
+        finally {
+            if(out != null){
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @param context context of the app
+     * @param name name of a dictionary
+     * @return statistics file of the dictionary
+     */
+    public static File getFile(Context context, String name){
+        return new File(context.getFilesDir(), Dictionary.getFilenameForStore(name, ENDING));
+    }
+
+    /**
+     * @param timestamp time in ms since epoch
+     * @return number of the day in the default time zone, days since 1970-01-01
+     */
+    public static int getDay(long timestamp){
+        long local = timestamp + TimeZone.getDefault().getOffset(timestamp);
+        return (int) Math.floor(local / (double) ReviewScheduler.DAYMILLIS);
+    }
+
+    /**
+     * Count the cards per box, if the dictionary changed since they were counted. Takes constant time otherwise.
+     * @param dictionary the dictionary of these statistics
+     */
+    public void sync(Dictionary dictionary){
+        long current = dictionary.getVersion();
+        if(version == current && boxCounts.length == dictionary.getBoxcount()){
+            return;
+        }
+        boxCounts = new int[dictionary.getBoxcount()];
+        for(Card card: dictionary.getCards()){
+            if(card != null && card.getBox() >= 1 && card.getBox() <= boxCounts.length){
+                boxCounts[card.getBox()-1]++;
+            }
+        }
+        version = current;
+    }
+
+    /**
+     * Accept the current version of the dictionary without counting again. Call this,
+     * after the recorded results were applied to the dictionary.
+     * @param dictionary the dictionary of these statistics
+     */
+    public void applied(Dictionary dictionary){
+        version = dictionary.getVersion();
+    }
+
+    /**
+     * Add the results of a session. Call this with the results in order of the answers and
+     * before they are applied to the cards, as the time of the last review is taken from
+     * the schedule of the cards (see Card.getLastReview).
+     * @param results results of a session
+     */
+    public void record(List<SessionResults.Result> results){
+        //Cards answered more than once in this session
+        Map<Card, Long> answered = new IdentityHashMap<Card, Long>();
+        for(SessionResults.Result result: results){
+            Long last = answered.get(result.card);
+            record(result, last != null ? last : result.card.getLastReview());
+            answered.put(result.card, result.timestamp);
+        }
+    }
+
+    /**
+     * @param result the result to add
+     * @param last time of the review before, 0 if there was none
+     */
+    private void record(SessionResults.Result result, long last){
+        boolean correct = result.grade >= ReviewScheduler.GRADE_PASSED;
+
+        if(result.oldBox != result.newBox){
+            if(result.oldBox >= 1 && result.oldBox <= boxCounts.length){
+                boxCounts[result.oldBox-1]--;
+            }
+            if(result.newBox >= 1 && result.newBox <= boxCounts.length){
+                boxCounts[result.newBox-1]++;
+            }
+        }
+
+        if(result.oldBox >= 1){
+            if(result.oldBox > perBox.length){
+                int oldLength = perBox.length;
+                perBox = Arrays.copyOf(perBox, result.oldBox);
+                for(int i=oldLength; i<perBox.length; i++){
+                    perBox[i] = new int[2];
+                }
+            }
+            count(perBox[result.oldBox-1], correct);
+        }
+
+        String lesson = result.card.getLesson();
+        count(getCounter(perLesson, lesson == null ? "" : lesson), correct);
+
+        int day = getDay(result.timestamp);
+        count(getCounter(perDay, day), correct);
+        boxCountsPerDay.put(day, Arrays.copyOf(boxCounts, boxCounts.length));
+
+        if(last > 0){
+            long elapsedDays = (result.timestamp - last) / ReviewScheduler.DAYMILLIS;
+            for(int i=RETENTIONBUCKETS.length-1; i>=0; i--){
+                if(elapsedDays >= RETENTIONBUCKETS[i]){
+                    count(retention[i], correct);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static <K> int[] getCounter(Map<K, int[]> counters, K key){
+        int[] counter = counters.get(key);
+        if(counter == null){
+            counter = new int[2];
+            counters.put(key, counter);
+        }
+        return counter;
+    }
+
+    private static void count(int[] counter, boolean correct){
+        counter[REVIEWS]++;
+        if(correct){
+            counter[CORRECT]++;
+        }
+    }
+
+    /**
+     * @param counter counter with REVIEWS and CORRECT
+     * @return fraction of correct reviews, -1 if there are no reviews
+     */
+    private static double getRate(int[] counter){
+        if(counter == null || counter[REVIEWS] == 0){
+            return -1;
+        }
+        return counter[CORRECT] / (double) counter[REVIEWS];
+    }
+
+    /**
+     * @return current number of cards per box, entry i for box i+1
+     */
+    public int[] getBoxCounts(){
+        return Arrays.copyOf(boxCounts, boxCounts.length);
+    }
+
+    /**
+     * @return cards per box at the end of each day with reviews, by day (see getDay). Do not modify the arrays.
+     */
+    public SortedMap<Integer, int[]> getBoxCountsPerDay(){
+        return Collections.unmodifiableSortedMap(boxCountsPerDay);
+    }
+
+    /**
+     * @return number of reviews and correct reviews (see REVIEWS and CORRECT) by day. Do not modify the arrays.
+     */
+    public SortedMap<Integer, int[]> getReviewsPerDay(){
+        return Collections.unmodifiableSortedMap(perDay);
+    }
+
+    /**
+     * @param day a day, see getDay
+     * @return number of reviews on that day
+     */
+    public int getReviewCount(int day){
+        int[] counter = perDay.get(day);
+        return counter == null ? 0 : counter[REVIEWS];
+    }
+
+    /**
+     * @param box box before the answer, starting with 1
+     * @return fraction of correct answers for cards in this box, -1 if there are no answers
+     */
+    public double getSuccessRate(int box){
+        if(box < 1 || box > perBox.length){
+            return -1;
+        }
+        return getRate(perBox[box-1]);
+    }
+
+    /**
+     * @param lesson the lesson, null for cards without lesson
+     * @return fraction of correct answers for cards of this lesson, -1 if there are no answers
+     */
+    public double getSuccessRateForLesson(String lesson){
+        return getRate(perLesson.get(lesson == null ? "" : lesson));
+    }
+
+    /**
+     * Estimated retention: fraction of correct answers for cards, whose last review
+     * was at least RETENTIONBUCKETS[bucket] days ago, but less than the next bound.
+     * @param bucket index in RETENTIONBUCKETS
+     * @return retention, -1 if there are no such answers
+     */
+    public double getRetention(int bucket){
+        if(bucket < 0 || bucket >= retention.length){
+            return -1;
+        }
+        return getRate(retention[bucket]);
+    }
+
+    /**
+     * @return fraction of correct answers for all cards, which were reviewed at least one day before, -1 if there are none
+     */
+    public double getRetention(){
+        int[] sum = new int[2];
+        for(int[] counter: retention){
+            sum[REVIEWS] += counter[REVIEWS];
+            sum[CORRECT] += counter[CORRECT];
+        }
+        return getRate(sum);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+/**
+ * Leitner system with fixed intervals per box. A passed card is due again
+ * after the interval of its box, i.e. cards in higher boxes are repeated less often.
+ * A failed card is due again immediately.
+ */
+public class LeitnerScheduler implements ReviewScheduler {
+
+    /**
+     * Default intervals in days for box 1, 2, 3 and so on
+     */
+    public static final int[] DEFAULTINTERVALS = new int[]{1, 2, 4, 7, 14, 30, 60, 120};
+
+    /**
+     * Intervals in days per box, the last one is used for all higher boxes
+     */
+    private int[] intervals;
+
+    /**
+     * Use DEFAULTINTERVALS
+     */
+    public LeitnerScheduler(){
+        this(DEFAULTINTERVALS);
+    }
+
+    /**
+     * @param intervals intervals in days for box 1, 2, 3 and so on, must not be empty
+     */
+    public LeitnerScheduler(int[] intervals){
+        this.intervals = intervals;
+    }
+
+    /**
+     * @param box box of a card starting with 1
+     * @return interval in days for cards in this box
+     */
+    public int getInterval(int box){
+        int index = Math.min(Math.max(box, 1), intervals.length)-1;
+        return intervals[index];
+    }
+
+    @Override
+    public void schedule(Card card, int grade, long now) {
+        if(card == null){
+            return;
+        }
+        if(grade >= GRADE_PASSED){
+            int interval = getInterval(card.getBox());
+            card.setSchedule(now+interval*DAYMILLIS, interval, card.getRepetitions()+1, card.getEaseFactor());
+        }
+        else{
+            card.setSchedule(now, 0, 0, card.getEaseFactor());
+        }
+    }
+}
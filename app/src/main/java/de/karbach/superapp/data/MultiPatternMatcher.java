@@ -0,0 +1,253 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks cards against many search patterns at once. A card matches, if at least one
+ * pattern matches it in the sense of {@link Card#matchesSearch(String)}: the pattern
+ * equals the type or the lesson, or it is contained in one of the two words.
+ *
+ * The patterns are compiled into an Aho-Corasick automaton once. Afterwards each word
+ * is scanned a single time, no matter how many patterns are given. Patterns and card
+ * values are compared in their simple form, see {@link Card#toSimpleString(String)}.
+ */
+public class MultiPatternMatcher {
+
+    /**
+     * Characters below this value are mapped by an array, all others by alphabetMap
+     */
+    private static final int DIRECTALPHABET = 128;
+
+    /**
+     * Maps ASCII characters to their alphabet index, -1 if the character is in no pattern
+     */
+    private int[] directAlphabet = new int[DIRECTALPHABET];
+    /**
+     * Maps all other characters to their alphabet index
+     */
+    private Map<Character, Integer> alphabetMap = new HashMap<Character, Integer>();
+    /**
+     * Number of different characters in all patterns
+     */
+    private int alphabetSize = 0;
+
+    /**
+     * Complete transition table of the automaton: transitions[state][alphabet index]
+     */
+    private int[][] transitions;
+    /**
+     * For each state: true if any pattern ends in this state or in one of its suffix states
+     */
+    private boolean[] accepting;
+
+    /**
+     * Simple patterns for exact comparison with type and lesson
+     */
+    private Set<String> exactPatterns = new HashSet<String>();
+
+    /**
+     * Build the automaton for the given patterns.
+     * @param patterns search patterns, e.g. "(-et", "(-en". Null and empty values are ignored.
+     */
+    public MultiPatternMatcher(Collection<String> patterns){
+        for(int i=0; i<DIRECTALPHABET; i++){
+            directAlphabet[i] = -1;
+        }
+
+        List<String> simplePatterns = new ArrayList<String>();
+        if(patterns != null){
+            for(String pattern: patterns){
+                String simple = Card.toSimpleString(pattern);
+                if(simple == null || simple.length() == 0 || exactPatterns.contains(simple)){
+                    continue;
+                }
+                exactPatterns.add(simple);
+                simplePatterns.add(simple);
+                for(int i=0; i<simple.length(); i++){
+                    char c = simple.charAt(i);
+                    if(getAlphabetIndex(c) == -1){
+                        if(c < DIRECTALPHABET){
+                            directAlphabet[c] = alphabetSize;
+                        }
+                        else{
+                            alphabetMap.put(c, alphabetSize);
+                        }
+                        alphabetSize++;
+                    }
+                }
+            }
+        }
+
+        buildAutomaton(simplePatterns);
+    }
+
+    /**
+     * @param c character of a pattern or of a scanned text
+     * @return index of the character in the alphabet, -1 if no pattern contains it
+     */
+    private int getAlphabetIndex(char c){
+        if(c < DIRECTALPHABET){
+            return directAlphabet[c];
+        }
+        Integer index = alphabetMap.get(c);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Create the trie of all patterns and convert it into a complete transition table
+     * by following the failure links breadth first.
+     * @param simplePatterns distinct, non empty patterns in simple form
+     */
+    private void buildAutomaton(List<String> simplePatterns){
+        int maxStates = 1;
+        for(String pattern: simplePatterns){
+            maxStates += pattern.length();
+        }
+
+        int[][] trie = new int[maxStates][alphabetSize];
+        boolean[] ends = new boolean[maxStates];
+        for(int[] row: trie){
+            for(int i=0; i<row.length; i++){
+                row[i] = -1;
+            }
+        }
+
+        int states = 1;
+        for(String pattern: simplePatterns){
+            int state = 0;
+            for(int i=0; i<pattern.length(); i++){
+                int index = getAlphabetIndex(pattern.charAt(i));
+                if(trie[state][index] == -1){
+                    trie[state][index] = states++;
+                }
+                state = trie[state][index];
+            }
+            ends[state] = true;
+        }
+
+        transitions = new int[states][];
+        accepting = new boolean[states];
+        int[] failure = new int[states];
+
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        transitions[0] = new int[alphabetSize];
+        for(int a=0; a<alphabetSize; a++){
+            int next = trie[0][a];
+            if(next == -1){
+                transitions[0][a] = 0;
+            }
+            else{
+                transitions[0][a] = next;
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+
+        while(! queue.isEmpty()){
+            int state = queue.removeFirst();
+            accepting[state] = ends[state] || accepting[failure[state]];
+            transitions[state] = new int[alphabetSize];
+            for(int a=0; a<alphabetSize; a++){
+                int next = trie[state][a];
+                if(next == -1){
+                    transitions[state][a] = transitions[failure[state]][a];
+                }
+                else{
+                    transitions[state][a] = next;
+                    failure[next] = transitions[failure[state]][a];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true, if no pattern was given, which means no card can match
+     */
+    public boolean isEmpty(){
+        return exactPatterns.isEmpty();
+    }
+
+    /**
+     * Scan the text once.
+     * @param simpleText text in simple form, might be null
+     * @return true if any pattern is contained in the text
+     */
+    public boolean containsAny(String simpleText){
+        if(simpleText == null || isEmpty()){
+            return false;
+        }
+        int state = 0;
+        for(int i=0; i<simpleText.length(); i++){
+            int index = getAlphabetIndex(simpleText.charAt(i));
+            if(index == -1){
+                state = 0;
+                continue;
+            }
+            state = transitions[state][index];
+            if(accepting[state]){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param card the card to check
+     * @return true if at least one pattern matches the card
+     */
+    public boolean matches(Card card){
+        if(card == null || isEmpty()){
+            return false;
+        }
+        if(card.getType() != null && exactPatterns.contains(card.getSimpleType())){
+            return true;
+        }
+        if(card.getLesson() != null && exactPatterns.contains(card.getSimpleLesson())){
+            return true;
+        }
+        return containsAny(card.getSimpleLang1()) || containsAny(card.getSimpleLang2());
+    }
+
+    /**
+     * @param cards the cards to filter
+     * @return new list of all cards matching at least one pattern, in original order
+     */
+    public ArrayList<Card> filter(List<Card> cards){
+        ArrayList<Card> result = new ArrayList<Card>();
+        if(cards == null || isEmpty()){
+            return result;
+        }
+        for(Card card: cards){
+            if(matches(card)){
+                result.add(card);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import android.content.Context;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Append only history of all answers given in tests of one dictionary. Each answer is
+ * stored as binary record of RECORDSIZE bytes in a separate file next to the dictionary,
+ * so the dictionary file does not grow and saving it does not get slower.
+ *
+ * Record layout (little endian):
+ * card key (long), timestamp in ms (long), box before (short), box after (short),
+ * grade (byte), 3 bytes reserved.
+ *
+ * Cards have no persistent id, the key is a 64 bit hash of lang1, which identifies
+ * a card within its dictionary (see Dictionary.addCard).
+ */
+public class ReviewLog {
+
+    /**
+     * Size of one record in bytes
+     */
+    public static final int RECORDSIZE = 24;
+
+    /**
+     * File extension of review logs
+     */
+    public static final String ENDING = "log";
+
+    /**
+     * The log file
+     */
+    private File file;
+
+    /**
+     * @param file the log file, created on first append
+     */
+    public ReviewLog(File file){
+        this.file = file;
+    }
+
+    /**
+     * @param context context of the app
+     * @param dictionary the dictionary
+     * @return the review log of the dictionary
+     */
+    public static ReviewLog forDictionary(Context context, Dictionary dictionary){
+        return forName(context, dictionary.getName());
+    }
+
+    /**
+     * @param context context of the app
+     * @param name name of a dictionary
+     * @return the review log of the dictionary with this name
+     */
+    public static ReviewLog forName(Context context, String name){
+        return new ReviewLog(new File(context.getFilesDir(), Dictionary.getFilenameForStore(name, ENDING)));
+    }
+
+    /**
+     * @return the log file
+     */
+    public File getFile(){
+        return file;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of lang1 of a card
+     * @param card the card
+     * @return key of the card in the log
+     */
+    public static long getCardKey(Card card){
+        long hash = 0xcbf29ce484222325L;
+        String lang1 = card.getLang1();
+        if(lang1 != null){
+            for(int i=0; i<lang1.length(); i++){
+                hash ^= lang1.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return number of complete records in the log
+     */
+    public long size(){
+        return file.length()/RECORDSIZE;
+    }
+
+    /**
+     * Append the results of a session with a single write.
+     * @param results committed results of a session
+     * @return true on success, false on error
+     */
+    public boolean append(List<SessionResults.Result> results){
+        if(results.isEmpty()){
+            return true;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(results.size()*RECORDSIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for(SessionResults.Result result: results){
+            buffer.putLong(getCardKey(result.card));
+            buffer.putLong(result.timestamp);
+            buffer.putShort((short) result.oldBox);
+            buffer.putShort((short) result.newBox);
+            buffer.put((byte) result.grade);
+            buffer.put((byte) 0);
+            buffer.put((byte) 0);
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
+
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(file, "rw");
+            FileChannel channel = out.getChannel();
+            //Drop an incomplete record left by an interrupted write
+            long length = channel.size() - channel.size()%RECORDSIZE;
+            channel.truncate(length);
+            channel.position(length);
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+        finally {
+            if(out != null){
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the log file
+     */
+    public void delete(){
+        if(file.exists()){
+            file.delete();
+        }
+    }
+
+    /**
+     * Open a reader for all records.
+     * @return reader, close it after use
+     * @throws IOException if the file cannot be read
+     */
+    public Reader openReader() throws IOException{
+        return openReader(0);
+    }
+
+    /**
+     * Open a reader starting at a given record, e.g. to read only records appended
+     * since the last read.
+     * @param fromRecord index of the first record to read
+     * @return reader, close it after use
+     * @throws IOException if the file cannot be read
+     */
+    public Reader openReader(long fromRecord) throws IOException{
+        return new Reader(file, fromRecord);
+    }
+
+    /**
+     * Reads the records sequentially from a memory mapped file. Call next before
+     * reading the values of each record.
+     */
+    public static class Reader implements Closeable {
+
+        private FileInputStream in;
+
+        /**
+         * Mapped records, null if there is nothing to read
+         */
+        private MappedByteBuffer buffer;
+
+        /**
+         * Index of the current record, counted from the start of the file
+         */
+        private long index;
+
+        private long cardKey;
+        private long timestamp;
+        private int oldBox;
+        private int newBox;
+        private int grade;
+
+        private Reader(File file, long fromRecord) throws IOException{
+            index = fromRecord-1;
+            if(! file.exists()){
+                return;
+            }
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            long records = channel.size()/RECORDSIZE;
+            long start = Math.max(0, fromRecord);
+            if(start < records) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start*RECORDSIZE, (records-start)*RECORDSIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            index = start-1;
+        }
+
+        /**
+         * Move to the next record.
+         * @return true if there is a next record, false at the end of the log
+         */
+        public boolean next(){
+            if(buffer == null || buffer.remaining() < RECORDSIZE){
+                return false;
+            }
+            cardKey = buffer.getLong();
+            timestamp = buffer.getLong();
+            oldBox = buffer.getShort();
+            newBox = buffer.getShort();
+            grade = buffer.get();
+            buffer.position(buffer.position()+3);
+            index++;
+            return true;
+        }
+
+        /**
+         * @return index of the current record in the log
+         */
+        public long getIndex(){
+            return index;
+        }
+
+        /**
+         * @return key of the card, see getCardKey
+         */
+        public long getCardKey(){
+            return cardKey;
+        }
+
+        /**
+         * @return time of the answer in ms since epoch
+         */
+        public long getTimestamp(){
+            return timestamp;
+        }
+
+        /**
+         * @return box before the answer
+         */
+        public int getOldBox(){
+            return oldBox;
+        }
+
+        /**
+         * @return box after the answer
+         */
+        public int getNewBox(){
+            return newBox;
+        }
+
+        /**
+         * @return grade of the answer, see ReviewScheduler
+         */
+        public int getGrade(){
+            return grade;
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            if(in != null){
+                in.close();
+                in = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+/**
+ * Computes, when a card should be repeated next. After each answer in a test the
+ * scheduler updates the schedule of the card (see Card.setSchedule) based on the
+ * grade of the answer. Grades follow the SM-2 scale from 0 (no idea) to 5 (perfect).
+ */
+public interface ReviewScheduler {
+
+    /**
+     * Grade for a wrong answer
+     */
+    int GRADE_WRONG = 1;
+
+    /**
+     * Grade for a correct answer
+     */
+    int GRADE_CORRECT = 4;
+
+    /**
+     * Answers with at least this grade count as passed
+     */
+    int GRADE_PASSED = 3;
+
+    /**
+     * Length of a day in ms
+     */
+    long DAYMILLIS = 24L*60*60*1000;
+
+    /**
+     * Update the schedule of a card after it was answered.
+     * @param card the answered card, its box is already moved up or down
+     * @param grade grade of the answer between 0 and 5
+     * @param now time of the answer in ms since epoch
+     */
+    void schedule(Card card, int grade, long now);
+}
@@ -0,0 +1,71 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+/**
+ * SuperMemo 2 algorithm. The interval of a card grows with its ease factor,
+ * which is adapted to the grades given for the card. The box of the card is not used.
+ */
+public class SM2Scheduler implements ReviewScheduler {
+
+    /**
+     * Minimum ease factor in percent
+     */
+    public static final int MINEASEFACTOR = 130;
+
+    /**
+     * Intervals in days after the first and the second successful repetition
+     */
+    public static final int FIRSTINTERVAL = 1;
+    public static final int SECONDINTERVAL = 6;
+
+    @Override
+    public void schedule(Card card, int grade, long now) {
+        if(card == null){
+            return;
+        }
+        grade = Math.min(Math.max(grade, 0), 5);
+
+        //EF' = EF + 0.1 - (5-q)*(0.08+(5-q)*0.02), here in percent
+        int miss = 5-grade;
+        int easeFactor = card.getEaseFactor() + 10 - miss*(8 + miss*2);
+        easeFactor = Math.max(easeFactor, MINEASEFACTOR);
+
+        int interval;
+        int repetitions;
+        if(grade >= GRADE_PASSED){
+            repetitions = card.getRepetitions()+1;
+            if(repetitions == 1){
+                interval = FIRSTINTERVAL;
+            }
+            else if(repetitions == 2){
+                interval = SECONDINTERVAL;
+            }
+            else{
+                interval = Math.round(card.getInterval()*card.getEaseFactor()/100.0f);
+            }
+        }
+        else{
+            repetitions = 0;
+            interval = FIRSTINTERVAL;
+        }
+
+        card.setSchedule(now+interval*DAYMILLIS, interval, repetitions, easeFactor);
+    }
+}
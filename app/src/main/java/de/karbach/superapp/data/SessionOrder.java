@@ -0,0 +1,265 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Orders the cards of a test session. All strategies start with an unbiased
+ * Fisher-Yates shuffle using a seeded random generator, so the same seed and the
+ * same cards always result in the same order, e.g. after the app was restarted.
+ * All strategies run in linear time of the number of cards.
+ */
+public class SessionOrder {
+
+    /**
+     * Available orders of the cards
+     */
+    public enum Strategy {
+        /**
+         * Random order
+         */
+        RANDOM,
+        /**
+         * Random order, the cards of each box are spread evenly over the session
+         */
+        INTERLEAVEBOXES,
+        /**
+         * Cards in lower boxes first, cards with a lower ease factor first within a box
+         */
+        HARDESTFIRST,
+        /**
+         * Random order, words starting alike are spread evenly over the session
+         */
+        SPREADSIMILAR
+    }
+
+    /**
+     * Words with the same first SIMILARPREFIX letters of the simple second language are similar
+     */
+    public static final int SIMILARPREFIX = 3;
+
+    /**
+     * Ease factors are compared only up to this value for HARDESTFIRST
+     */
+    private static final int MAXSORTEDEASEFACTOR = 400;
+
+    private Random random;
+
+    private Strategy strategy;
+
+    /**
+     * @param seed seed for the random generator, store it to reproduce the order
+     * @param strategy the order to create, RANDOM if null
+     */
+    public SessionOrder(long seed, Strategy strategy){
+        this.random = new Random(seed);
+        this.strategy = strategy == null ? Strategy.RANDOM : strategy;
+    }
+
+    /**
+     * @param name name of a strategy, e.g. from Strategy.name()
+     * @return the strategy with this name, RANDOM if name is null or unknown
+     */
+    public static Strategy parseStrategy(String name){
+        if(name != null){
+            for(Strategy strategy: Strategy.values()){
+                if(strategy.name().equals(name)){
+                    return strategy;
+                }
+            }
+        }
+        return Strategy.RANDOM;
+    }
+
+    /**
+     * Unbiased Fisher-Yates shuffle in place
+     * @param list the list to shuffle
+     * @param random source of randomness
+     */
+    public static <T> void shuffle(List<T> list, Random random){
+        for(int i=list.size()-1; i>0; i--){
+            int j = random.nextInt(i+1);
+            T tmp = list.get(i);
+            list.set(i, list.get(j));
+            list.set(j, tmp);
+        }
+    }
+
+    /**
+     * Order the cards of a session.
+     * @param cards the cards, not modified
+     * @return new list with the cards in session order
+     */
+    public List<Card> order(List<Card> cards){
+        List<Card> result = new ArrayList<Card>(cards);
+        shuffle(result, random);
+        switch(strategy){
+            case INTERLEAVEBOXES:
+                return spreadEvenly(groupByBox(result), result.size());
+            case HARDESTFIRST:
+                return sortByDifficulty(result);
+            case SPREADSIMILAR:
+                return spreadEvenly(groupBySimilarity(result), result.size());
+            default:
+                return result;
+        }
+    }
+
+    /**
+     * @param cards shuffled cards
+     * @return the cards grouped by their box, the order of the cards is kept within a group
+     */
+    private List<List<Card>> groupByBox(List<Card> cards){
+        Map<Integer, List<Card>> groups = new HashMap<Integer, List<Card>>();
+        List<List<Card>> result = new ArrayList<List<Card>>();
+        for(Card card: cards){
+            Integer box = card == null ? 0 : card.getBox();
+            List<Card> group = groups.get(box);
+            if(group == null){
+                group = new ArrayList<Card>();
+                groups.put(box, group);
+                result.add(group);
+            }
+            group.add(card);
+        }
+        return result;
+    }
+
+    /**
+     * @param cards shuffled cards
+     * @return the cards grouped by the start of their second language, the order of the cards is kept within a group
+     */
+    private List<List<Card>> groupBySimilarity(List<Card> cards){
+        Map<String, List<Card>> groups = new HashMap<String, List<Card>>();
+        List<List<Card>> result = new ArrayList<List<Card>>();
+        for(Card card: cards){
+            String key = card == null ? null : card.getSimpleLang2();
+            if(key == null){
+                key = "";
+            }
+            else if(key.length() > SIMILARPREFIX){
+                key = key.substring(0, SIMILARPREFIX);
+            }
+            List<Card> group = groups.get(key);
+            if(group == null){
+                group = new ArrayList<Card>();
+                groups.put(key, group);
+                result.add(group);
+            }
+            group.add(card);
+        }
+        return result;
+    }
+
+    /**
+     * Merge the groups, so that the cards of each group are spread evenly over the result.
+     * Card i of a group with s cards gets the position (i+offset)/s in [0,1) with a random
+     * offset per group. The cards are bucket sorted by this position into count buckets,
+     * cards in the same bucket are shuffled.
+     * @param groups the groups to merge
+     * @param count total number of cards in all groups
+     * @return all cards of the groups
+     */
+    private List<Card> spreadEvenly(List<List<Card>> groups, int count){
+        List<List<Card>> buckets = new ArrayList<List<Card>>(count);
+        for(int i=0; i<count; i++){
+            buckets.add(null);
+        }
+        for(List<Card> group: groups){
+            int size = group.size();
+            double offset = random.nextDouble();
+            for(int i=0; i<size; i++){
+                int bucket = (int) ((i+offset)/size*count);
+                bucket = Math.min(bucket, count-1);
+                List<Card> content = buckets.get(bucket);
+                if(content == null){
+                    content = new ArrayList<Card>(2);
+                    buckets.set(bucket, content);
+                }
+                content.add(group.get(i));
+            }
+        }
+        List<Card> result = new ArrayList<Card>(count);
+        for(List<Card> content: buckets){
+            if(content != null){
+                shuffle(content, random);
+                result.addAll(content);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stable counting sort by ease factor followed by a stable counting sort by box.
+     * @param cards shuffled cards
+     * @return cards with the lowest box first, within a box the lowest ease factor first
+     */
+    private List<Card> sortByDifficulty(List<Card> cards){
+        List<Card> byEase = countingSort(cards, SM2Scheduler.MINEASEFACTOR, MAXSORTEDEASEFACTOR, false);
+        if(byEase.isEmpty()){
+            return byEase;
+        }
+
+        int minBox = Integer.MAX_VALUE;
+        int maxBox = Integer.MIN_VALUE;
+        for(Card card: byEase){
+            int box = card == null ? 0 : card.getBox();
+            minBox = Math.min(minBox, box);
+            maxBox = Math.max(maxBox, box);
+        }
+        return countingSort(byEase, minBox, maxBox, true);
+    }
+
+    /**
+     * Stable counting sort of cards by box or ease factor, values are clamped to [min, max]
+     * @param cards the cards to sort
+     * @param min smallest value
+     * @param max largest value
+     * @param byBox if true sort by box, otherwise by ease factor
+     * @return new sorted list
+     */
+    private List<Card> countingSort(List<Card> cards, int min, int max, boolean byBox){
+        int[] counts = new int[max-min+2];
+        int[] values = new int[cards.size()];
+        for(int i=0; i<cards.size(); i++){
+            Card card = cards.get(i);
+            int value = card == null ? 0 : (byBox ? card.getBox() : card.getEaseFactor());
+            value = Math.min(Math.max(value, min), max)-min;
+            values[i] = value;
+            counts[value+1]++;
+        }
+        for(int i=1; i<counts.length; i++){
+            counts[i] += counts[i-1];
+        }
+        Card[] sorted = new Card[cards.size()];
+        for(int i=0; i<cards.size(); i++){
+            sorted[counts[values[i]]++] = cards.get(i);
+        }
+        List<Card> result = new ArrayList<Card>(sorted.length);
+        for(Card card: sorted){
+            result.add(card);
+        }
+        return result;
+    }
+}
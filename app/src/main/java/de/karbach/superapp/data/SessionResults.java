@@ -0,0 +1,221 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers the answers of a test session. Cards are not modified while answering,
+ * each answer only records the box move. The recorded moves are applied to the
+ * dictionary and saved together with commit at the end of the session.
+ * Until then the last answer can be undone in O(1).
+ */
+public class SessionResults {
+
+    /**
+     * One recorded answer
+     */
+    public static class Result {
+        /**
+         * The answered card
+         */
+        public final Card card;
+        /**
+         * Box before and after this answer
+         */
+        public final int oldBox, newBox;
+        /**
+         * Time of the answer in ms since epoch
+         */
+        public final long timestamp;
+        /**
+         * Grade of the answer, see ReviewScheduler
+         */
+        public final int grade;
+        /**
+         * Index of the card in the session
+         */
+        public final int sessionIndex;
+        /**
+         * Previous uncommitted result for the same card, null if there is none
+         */
+        private final Result previous;
+
+        private Result(Card card, int oldBox, int newBox, long timestamp, int grade, int sessionIndex, Result previous){
+            this.card = card;
+            this.oldBox = oldBox;
+            this.newBox = newBox;
+            this.timestamp = timestamp;
+            this.grade = grade;
+            this.sessionIndex = sessionIndex;
+            this.previous = previous;
+        }
+
+        /**
+         * @return true, if the card moves into a higher box
+         */
+        public boolean isUp(){
+            return newBox > oldBox;
+        }
+
+        /**
+         * @return true, if the card moves into a lower box
+         */
+        public boolean isDown(){
+            return newBox < oldBox;
+        }
+    }
+
+    /**
+     * Applies the moves to the dictionary
+     */
+    private BoxTransitions transitions;
+
+    /**
+     * Uncommitted results in order of the answers
+     */
+    private ArrayList<Result> results = new ArrayList<Result>();
+
+    /**
+     * Last uncommitted result of each card
+     */
+    private Map<Card, Result> lastResults = new IdentityHashMap<Card, Result>();
+
+    /**
+     * @param transitions transitions for the dictionary of the session
+     */
+    public SessionResults(BoxTransitions transitions){
+        this.transitions = transitions;
+    }
+
+    /**
+     * @param card a card of the session
+     * @return box of the card including the uncommitted answers
+     */
+    public int getPendingBox(Card card){
+        Result last = lastResults.get(card);
+        return last == null ? card.getBox() : last.newBox;
+    }
+
+    /**
+     * Record an answer. A correct answer moves the card one box up, but not above the
+     * highest box, a wrong answer one box down, but not below box 1.
+     * @param card the answered card
+     * @param grade grade of the answer, see ReviewScheduler
+     * @param timestamp time of the answer in ms since epoch
+     * @param sessionIndex index of the card in the session
+     * @return the recorded result
+     */
+    public Result record(Card card, int grade, long timestamp, int sessionIndex){
+        int oldBox = getPendingBox(card);
+        int newBox;
+        if(grade >= ReviewScheduler.GRADE_PASSED){
+            newBox = Math.min(oldBox+1, Math.max(oldBox, transitions.getMaxBox()));
+        }
+        else{
+            newBox = Math.max(oldBox-1, 1);
+        }
+        Result result = new Result(card, oldBox, newBox, timestamp, grade, sessionIndex, lastResults.get(card));
+        results.add(result);
+        lastResults.put(card, result);
+        return result;
+    }
+
+    /**
+     * Remove the last uncommitted answer.
+     * @return the removed result, null if there is no uncommitted answer
+     */
+    public Result undo(){
+        if(results.isEmpty()){
+            return null;
+        }
+        Result result = results.remove(results.size()-1);
+        if(result.previous == null){
+            lastResults.remove(result.card);
+        }
+        else{
+            lastResults.put(result.card, result.previous);
+        }
+        return result;
+    }
+
+    /**
+     * @return the uncommitted results in order of the answers
+     */
+    public List<Result> getResults(){
+        return new ArrayList<Result>(results);
+    }
+
+    /**
+     * @return number of uncommitted answers
+     */
+    public int size(){
+        return results.size();
+    }
+
+    /**
+     * Apply all recorded answers to the cards and the dictionary, append them to the
+     * ReviewLog, update the LearningStatistics and save the dictionary once.
+     * Afterwards the answers cannot be undone anymore.
+     * @param context context for saving, if null neither the log, the statistics nor the dictionary are written
+     * @return true on success, false if saving failed
+     */
+    public boolean commit(Context context){
+        if(results.isEmpty()){
+            return true;
+        }
+        Dictionary dictionary = transitions.getDictionary();
+        //Record the statistics before the moves and before reviewCard replaces the schedule
+        LearningStatistics statistics = null;
+        if(dictionary != null && context != null){
+            statistics = dictionary.getStatistics(context);
+            statistics.record(results);
+        }
+        for(Result result: results){
+            //Cards deleted during the session are not applied
+            if(dictionary != null && result.card.getDictionary() != dictionary){
+                continue;
+            }
+            transitions.moveTo(result.card, result.newBox);
+            if(dictionary != null){
+                dictionary.reviewCard(result.card, result.grade, result.timestamp);
+            }
+        }
+        boolean success = true;
+        if(dictionary != null && context != null){
+            success = ReviewLog.forDictionary(context, dictionary).append(results);
+            statistics.applied(dictionary);
+            //The statistics match the stored revision only, if the dictionary was saved
+            if(dictionary.save(context)){
+                success &= statistics.save(context, dictionary);
+            }
+            else{
+                success = false;
+            }
+        }
+        results.clear();
+        lastResults.clear();
+        return success;
+    }
+}
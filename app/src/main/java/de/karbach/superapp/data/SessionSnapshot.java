@@ -0,0 +1,289 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact state of a test session, which survives the death of the process.
+ *
+ * Instead of the cards only their keys (see ReviewLog.getCardKey) are stored, together with
+ * a bit set of the completed cards, the position and the seed of the session. This takes
+ * 8 bytes and 1 bit per card, so that it fits into the saved instance state. Large sessions
+ * are written to a small session file instead. On restore the keys are resolved against
+ * the dictionary in a single pass over its cards.
+ */
+public class SessionSnapshot {
+
+    /**
+     * Start and extension of the session files in the files directory of the app, one file per session
+     */
+    public static final String FILEPREFIX = "testsession";
+    public static final String ENDING = "snapshot";
+
+    /**
+     * Sessions with more cards should be kept in the session file instead of the saved instance state
+     */
+    public static final int MAXBUNDLECARDS = 2000;
+
+    /**
+     * First int of a session file, "VBSS"
+     */
+    private static final int MAGIC = 0x56425353;
+
+    /**
+     * Version of the file format
+     */
+    private static final int FORMATVERSION = 1;
+
+    /**
+     * Name of the dictionary of the session
+     */
+    private String dictionary;
+
+    /**
+     * Seed of the session
+     */
+    private long seed;
+
+    /**
+     * Current position in the session
+     */
+    private int position;
+
+    /**
+     * Keys of the tested cards in session order
+     */
+    private long[] cardKeys;
+
+    /**
+     * Bit i is set, if card i was completed
+     */
+    private long[] completed;
+
+    /**
+     * @param dictionary name of the dictionary of the session
+     * @param seed seed of the session
+     * @param position current position
+     * @param cardKeys keys of the cards in session order
+     * @param completed bit set of completed cards, 64 cards per entry
+     */
+    public SessionSnapshot(String dictionary, long seed, int position, long[] cardKeys, long[] completed){
+        this.dictionary = dictionary;
+        this.seed = seed;
+        this.position = position;
+        this.cardKeys = cardKeys == null ? new long[0] : cardKeys;
+        this.completed = completed == null ? new long[0] : completed;
+    }
+
+    /**
+     * Create the snapshot of a session
+     * @param dictionary name of the dictionary of the session
+     * @param seed seed of the session
+     * @param position current position
+     * @param cards tested cards in session order
+     * @param completedCards for each card, whether it was completed, null entries count as false
+     * @return the snapshot
+     */
+    public static SessionSnapshot create(String dictionary, long seed, int position, List<Card> cards, List<Boolean> completedCards){
+        long[] keys = new long[cards.size()];
+        long[] bits = new long[(cards.size()+63)/64];
+        for(int i=0; i<keys.length; i++){
+            keys[i] = ReviewLog.getCardKey(cards.get(i));
+            Boolean done = i < completedCards.size() ? completedCards.get(i) : null;
+            if(done != null && done){
+                bits[i/64] |= 1L << (i%64);
+            }
+        }
+        return new SessionSnapshot(dictionary, seed, position, keys, bits);
+    }
+
+    /**
+     * Sessions running in several tasks at once use different files, as their seeds differ.
+     * @param context context of the app
+     * @param seed seed of the session
+     * @return the session file
+     */
+    public static File getFile(Context context, long seed){
+        return new File(context.getFilesDir(), FILEPREFIX+"_"+Long.toHexString(seed)+"."+ENDING);
+    }
+
+    public String getDictionary() {
+        return dictionary;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public long[] getCardKeys() {
+        return cardKeys;
+    }
+
+    public long[] getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return number of cards in the session
+     */
+    public int size(){
+        return cardKeys.length;
+    }
+
+    /**
+     * @param index index of a card in the session
+     * @return true, if the card was completed
+     */
+    public boolean isCompleted(int index){
+        int word = index/64;
+        return word < completed.length && (completed[word] & (1L << (index%64))) != 0;
+    }
+
+    /**
+     * Resolve the stored keys against the cards of a dictionary. Cards, which no longer
+     * exist, are left out.
+     * @param dict the dictionary of the session
+     * @param cards receives the cards in session order
+     * @param completedCards receives for each card, whether it was completed
+     * @return the position adapted to the left out cards
+     */
+    public int restore(Dictionary dict, List<Card> cards, List<Boolean> completedCards){
+        Map<Long, Card> byKey = new HashMap<Long, Card>();
+        for(Card card: dict.getCards()){
+            Long key = ReviewLog.getCardKey(card);
+            if(! byKey.containsKey(key)){
+                byKey.put(key, card);
+            }
+        }
+        int result = position;
+        for(int i=0; i<cardKeys.length; i++){
+            Card card = byKey.get(cardKeys[i]);
+            if(card == null){
+                if(i < position){
+                    result--;
+                }
+                continue;
+            }
+            cards.add(card);
+            completedCards.add(isCompleted(i));
+        }
+        return Math.max(0, Math.min(result, cards.size()-1));
+    }
+
+    /**
+     * Write this snapshot to a file
+     * @param file target file
+     * @return true on success
+     */
+    public boolean save(File file){
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMATVERSION);
+            out.writeUTF(dictionary == null ? "" : dictionary);
+            out.writeLong(seed);
+            out.writeInt(position);
+            out.writeInt(cardKeys.length);
+            for(long key: cardKeys){
+                out.writeLong(key);
+            }
+            out.writeInt(completed.length);
+            for(long bits: completed){
+                out.writeLong(bits);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+        finally {
+            if(out != null){
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot from a file
+     * @param file the session file
+     * @return the snapshot, null if the file does not exist or is invalid
+     */
+    public static SessionSnapshot load(File file){
+        if(file == null || ! file.exists()){
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if(in.readInt() != MAGIC || in.readInt() != FORMATVERSION){
+                return null;
+            }
+            String dictionary = in.readUTF();
+            long seed = in.readLong();
+            int position = in.readInt();
+            int count = in.readInt();
+            if(count < 0 || count > file.length()/8){
+                return null;
+            }
+            long[] keys = new long[count];
+            for(int i=0; i<count; i++){
+                keys[i] = in.readLong();
+            }
+            int words = in.readInt();
+            if(words < 0 || words > count/64+1){
+                return null;
+            }
+            long[] bits = new long[words];
+            for(int i=0; i<words; i++){
+                bits[i] = in.readLong();
+            }
+            return new SessionSnapshot(dictionary, seed, position, keys, bits);
+        } catch (IOException e) {
+            return null;
+        }
+        finally {
+            if(in != null){
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
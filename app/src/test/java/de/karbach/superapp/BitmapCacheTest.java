@@ -0,0 +1,56 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package de.karbach.superapp;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the size aware bitmap cache.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BitmapCacheTest {
+
+    @Test
+    public void testSampleSize(){
+        assertEquals(1, BitmapCache.calculateSampleSize(100, 100, 0, 0));
+        assertEquals(1, BitmapCache.calculateSampleSize(100, 100, 100, 100));
+        assertEquals(2, BitmapCache.calculateSampleSize(100, 100, 50, 50));
+        assertEquals(4, BitmapCache.calculateSampleSize(400, 200, 0, 50));
+        assertEquals(2, BitmapCache.calculateSampleSize(400, 200, 150, 10));
+        assertEquals(1, BitmapCache.calculateSampleSize(0, 0, 10, 10));
+    }
+
+    @Test
+    public void testCaching(){
+        BitmapCache cache = BitmapCache.getInstance(RuntimeEnvironment.application);
+        Bitmap first = cache.getBitmap(RuntimeEnvironment.application.getResources(), R.drawable.cardstack, 0, 20);
+        assertNotNull(first);
+        assertSame(first, cache.getBitmap(RuntimeEnvironment.application.getResources(), R.drawable.cardstack, 0, 20));
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertNotSame(first, cache.getBitmap(RuntimeEnvironment.application.getResources(), R.drawable.cardstack, 0, 20));
+    }
+}
@@ -32,6 +32,7 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.support.v4.content.FileProvider;
 import android.support.v4.view.GestureDetectorCompat;
+import android.support.v7.widget.RecyclerView;
 import android.view.ContextMenu;
 import android.view.GestureDetector;
 import android.view.Menu;
@@ -43,7 +44,6 @@ import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.PopupMenu;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -64,6 +64,7 @@ import org.robolectric.shadows.ShadowAlertDialog;
 import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowContentResolver;
 import org.robolectric.shadows.ShadowEnvironment;
+import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.shadows.ShadowPopupMenu;
 
 import java.io.File;
@@ -74,6 +75,7 @@ import androidx.test.core.app.ApplicationProvider;
 import de.karbach.superapp.data.Card;
 import de.karbach.superapp.data.Dictionary;
 import de.karbach.superapp.data.DictionaryManagement;
+import de.karbach.superapp.data.SessionOrder;
 
 import static android.view.MotionEvent.ACTION_DOWN;
 import static org.junit.Assert.*;
@@ -404,6 +406,160 @@ public class StartActivitiesTest {
         backButton.performClick();
     }
 
+    @Test
+    public void startMultipleChoiceTestActivity(){
+        initAndSelectDictionary("startMultipleChoiceTestActivity", 1);
+
+        StarterActivity starteractivity = Robolectric.buildActivity(StarterActivity.class).setup().get();
+        Intent intent = new Intent(starteractivity,CardActivity.class);
+        intent.putExtra(TestActivity.PARAMREALTEST, true);
+        intent.putExtra(TestActivity.PARAMMULTIPLECHOICE, true);
+        ActivityController<TestActivity> actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create();
+        TestActivity activity = actController.visible().get();
+
+        assertEquals(View.VISIBLE, activity.findViewById(R.id.testcard_choices).getVisibility());
+        EditText solutionText = activity.findViewById(R.id.testcard_solution_text);
+        Button correct = null;
+        int[] choiceIds = new int[]{R.id.testcard_choice1, R.id.testcard_choice2, R.id.testcard_choice3, R.id.testcard_choice4};
+        for(int id: choiceIds){
+            Button choice = activity.findViewById(id);
+            if(choice.getVisibility() == View.VISIBLE && choice.getText().toString().equals(solutionText.getText().toString())){
+                correct = choice;
+            }
+        }
+        assertNotNull(correct);
+        correct.performClick();
+
+        TestFragment testf = (TestFragment) activity.getFragmentManager().findFragmentById(R.id.fragment_container);
+        assertEquals(1, testf.getResults().size());
+        assertEquals(2, testf.getResults().getResults().get(0).newBox);
+        //Only the compact snapshot is kept in the saved state, not the serialized cards
+        assertFalse(testf.getArguments().containsKey(TestFragment.PARAMTESTCARDS));
+        Bundle state = new Bundle();
+        testf.onSaveInstanceState(state);
+        assertEquals(4, state.getLongArray("de.karbach.superapp.TestFragment.SAVEDCARDS").length);
+    }
+
+    @Test
+    public void startDueTestActivity(){
+        initAndSelectDictionary("startDueTestActivity", 2);
+
+        StarterActivity starteractivity = Robolectric.buildActivity(StarterActivity.class).setup().get();
+        Intent intent = new Intent(starteractivity,CardActivity.class);
+        intent.putExtra(TestActivity.PARAMREALTEST, true);
+        intent.putExtra(TestActivity.PARAMDUECOUNT, 3);
+        ActivityController<TestActivity> actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create();
+        TestActivity activity = actController.visible().get();
+
+        TextView status = activity.findViewById(R.id.testcard_statustext);
+        assertEquals("1/3", status.getText().toString());
+    }
+
+    @Test
+    public void startOrderedTestActivity(){
+        initAndSelectDictionary("startOrderedTestActivity", 3);
+
+        StarterActivity starteractivity = Robolectric.buildActivity(StarterActivity.class).setup().get();
+        Dictionary dict = DictionaryManagement.getInstance(starteractivity).getSelectedDictionary();
+        Card hardest = dict.getCards().get(2);
+        hardest.setBox(1);
+        Intent intent = new Intent(starteractivity,CardActivity.class);
+        intent.putExtra(TestActivity.PARAMREALTEST, true);
+        intent.putExtra(TestActivity.PARAMDUECOUNT, 4);
+        intent.putExtra(TestActivity.PARAMORDER, SessionOrder.Strategy.HARDESTFIRST.name());
+        ActivityController<TestActivity> actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create();
+        TestActivity activity = actController.visible().get();
+
+        TestFragment testf = (TestFragment) activity.getFragmentManager().findFragmentById(R.id.fragment_container);
+        assertSame(hardest, testf.getCurrentCard());
+    }
+
+    @Test
+    public void restoreTestActivity(){
+        initAndSelectDictionary("restoreTestActivity", 2);
+
+        StarterActivity starteractivity = Robolectric.buildActivity(StarterActivity.class).setup().get();
+        Intent intent = new Intent(starteractivity,CardActivity.class);
+        intent.putExtra(TestActivity.PARAMREALTEST, true);
+        intent.putExtra(TestActivity.PARAMBOX, 2);
+        ActivityController<TestActivity> actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create().visible();
+        Bundle state = new Bundle();
+        actController.saveInstanceState(state);
+
+        //The session is restored from the snapshot
+        actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create(state);
+        assertFalse(actController.get().isFinishing());
+        TestFragment testf = (TestFragment) actController.get().getFragmentManager().findFragmentById(R.id.fragment_container);
+        assertEquals(4, testf.getSnapshot().size());
+
+        //The snapshot does not match another dictionary, the session ends instead of showing no cards
+        initAndSelectDictionary("restoreTestActivityOther", 2);
+        actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create(state);
+        assertTrue(actController.get().isFinishing());
+    }
+
+    @Test
+    public void startMixedTestActivity(){
+        initAndSelectDictionary("startMixedTestActivity", 2);
+
+        StarterActivity starteractivity = Robolectric.buildActivity(StarterActivity.class).setup().get();
+        Intent intent = new Intent(starteractivity,CardActivity.class);
+        intent.putExtra(TestActivity.PARAMREALTEST, true);
+        intent.putExtra(TestActivity.PARAMMIXEDLENGTH, 3);
+        intent.putExtra(TestActivity.PARAMBOXWEIGHTS, new double[]{1, 1, 1, 1, 1});
+        ActivityController<TestActivity> actController = Robolectric.buildActivity(TestActivity.class);
+        actController.get().setIntent(intent);
+        actController.create();
+        TestActivity activity = actController.visible().get();
+
+        Button checkButton = activity.findViewById(R.id.testcard_check_button);
+        Button nextButton = activity.findViewById(R.id.testcard_next_button);
+        TextView status = activity.findViewById(R.id.testcard_statustext);
+        assertEquals("1/3", status.getText().toString());
+        for(int i=0; i<5; i++){
+            checkButton.performClick();
+            nextButton.performClick();
+        }
+        TestFragment testf = (TestFragment) activity.getFragmentManager().findFragmentById(R.id.fragment_container);
+        assertNotNull(testf.getCurrentCard());
+
+        //Answers are buffered until the test is finished
+        int answers = testf.getResults().size();
+        assertTrue(answers > 0);
+        Button undoButton = activity.findViewById(R.id.testcard_undo);
+        undoButton.performClick();
+        assertEquals(answers-1, testf.getResults().size());
+
+        //They stay undoable while the test is only paused, and they are kept in the saved state
+        actController.pause();
+        assertEquals(answers-1, testf.getResults().size());
+        Bundle state = new Bundle();
+        actController.saveInstanceState(state);
+        ActivityController<TestActivity> restoredController = Robolectric.buildActivity(TestActivity.class);
+        restoredController.get().setIntent(intent);
+        restoredController.create(state);
+        TestFragment restoredf = (TestFragment) restoredController.get().getFragmentManager().findFragmentById(R.id.fragment_container);
+        assertEquals(answers-1, restoredf.getResults().size());
+
+        actController.resume();
+        activity.finish();
+        actController.pause();
+        assertEquals(0, testf.getResults().size());
+        assertFalse(DictionaryManagement.getInstance(activity).getSelectedDictionary().isDirty());
+    }
+
     @Test
     public void testRealTestForTestFragment(){
         StarterActivity starteractivity = Robolectric.buildActivity(StarterActivity.class).setup().get();
@@ -505,6 +661,10 @@ public class StartActivitiesTest {
         int res = ph.getDrawableResourceForLanguage(null);
         assertEquals(R.drawable.flag_german, res);
         assertEquals(starteractivity.getResources().getString(R.string.lang_german), ph.getDisplaynameForLanguage(null));
+
+        PictureHelper shared = PictureHelper.getInstance(starteractivity);
+        assertSame(shared, PictureHelper.getInstance(starteractivity));
+        assertEquals(R.drawable.flag_german, shared.getDrawableResourceForLanguage(null));
     }
 
     @Test @Config(qualifiers = "land")
@@ -547,8 +707,14 @@ public class StartActivitiesTest {
 
         controller.visible();
 
+        FragmentManager fm = ba.getFragmentManager();
+        Fragment f = fm.findFragmentById(R.id.fragment_container);
+        assertTrue(f instanceof BoxFragment);
+        BoxFragment bf = (BoxFragment) f;
+
         for(int box=1; box<=5; box++) {
-            BoxView bv = ba.findViewById(BoxFragment.boxids[box - 1]);
+            BoxView bv = bf.getBoxView(box);
+            assertNotNull(bv);
             Canvas canvas = new Canvas(Shadow.newInstanceOf(Bitmap.class));
 
             bv.drawBox(canvas);
@@ -582,11 +748,6 @@ public class StartActivitiesTest {
             MotionEvent touchEvent = MotionEvent.obtain(200, 300, MotionEvent.ACTION_MOVE, 15.0f, 10.0f, 0);
             Shadows.shadowOf(bv).getOnTouchListener().onTouch(bv, touchEvent);
 
-            FragmentManager fm = ba.getFragmentManager();
-            Fragment f = fm.findFragmentById(R.id.fragment_container);
-            assertTrue(f instanceof BoxFragment);
-
-            BoxFragment bf = (BoxFragment) f;
             bf.showPopup(box);
             bf.updateBoxViews(null);
             bf.showPopup(1000);
@@ -671,6 +832,25 @@ public class StartActivitiesTest {
         // Foreces getMyFragment to return null, because fragment was not yet created
     }
 
+    /**
+     * The card list is diffed on a background thread, wait until it shows rows.
+     * @param rv the recycler view of the card list
+     * @return the view of the first row, null if none is shown
+     */
+    private View waitForFirstRow(RecyclerView rv){
+        for(int i=0; i<200 && rv.getChildCount() == 0; i++){
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+            }
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            rv.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+            rv.layout(0, 0, 480, 800);
+        }
+        return rv.getChildAt(0);
+    }
+
     @Test
     public void testCardlistActivity(){
         Dictionary mydict = new Dictionary("MyCardlistDict");
@@ -733,7 +913,7 @@ public class StartActivitiesTest {
         //Click on a card in list, onResult
         FragmentManager fm = activity.getFragmentManager();
         CardListFragment cardlistfragment = (CardListFragment) fm.findFragmentById(R.id.fragment_container);
-        cardlistfragment.onListItemClick(null, null, 0,0);
+        cardlistfragment.onCardClick(0);
         Shadows.shadowOf(activity).receiveResult(
                 new Intent(activity, CardActivity.class),
                 Activity.RESULT_OK,
@@ -742,20 +922,31 @@ public class StartActivitiesTest {
         cardlistfragment.sortByLanguage("Deutsch");
         cardlistfragment.sortByLanguage("Englisch");
 
+        //Without a pressed card nothing is deleted
+        int cardCount = dm.getSelectedDictionary().getCards().size();
         MenuItem menuItem = new RoboMenuItem(R.id.menu_card_delete);
-        cardlistfragment.onContextItemSelected(menuItem);
+        assertFalse(cardlistfragment.onContextItemSelected(menuItem));
+        assertEquals(cardCount, dm.getSelectedDictionary().getCards().size());
 
         cardlistfragment.search("a");
         cardlistfragment.search("b");
         cardlistfragment.search("drei");
 
-        CardListFragment.CardAdapter ca = (CardListFragment.CardAdapter) cardlistfragment.getListAdapter();
+        CardListFragment.CardAdapter ca = cardlistfragment.getCardAdapter();
         assertEquals( "Deutsch", ca.getLang1());
         assertEquals( "Englisch", ca.getLang2());
 
-        ListView lv = cardlistfragment.getListView();
-        View itemview = lv.getChildAt(0);
+        //Delete the pressed card with the context menu
+        cardlistfragment.search("");
+        actController.visible();
+        RecyclerView rv = cardlistfragment.getRecyclerView();
+        View itemview = waitForFirstRow(rv);
+        assertNotNull(itemview);
+        Card pressed = ca.getCard(rv.getChildAdapterPosition(itemview));
         itemview.performLongClick();
+        assertTrue(cardlistfragment.onContextItemSelected(new RoboMenuItem(R.id.menu_card_delete)));
+        assertEquals(cardCount-1, dm.getSelectedDictionary().getCards().size());
+        assertNull(dm.getSelectedDictionary().getCardByLang1(pressed.getLang1()));
 
         ArrayList<Card> nullCards = new ArrayList<Card>();
         nullCards.add(new Card("", ""));
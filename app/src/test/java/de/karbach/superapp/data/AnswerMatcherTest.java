@@ -0,0 +1,111 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for checking answers against the solution of a card.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AnswerMatcherTest {
+
+    @Test
+    public void testVariants(){
+        AnswerMatcher matcher = new AnswerMatcher("hus (-et, -)", 0);
+        assertEquals(AnswerMatcher.Verdict.EXACT, matcher.check(" hus (-et, -) ").verdict);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("hus").verdict);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("HUS (-et -)").verdict);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("-et").verdict);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("").verdict);
+
+        matcher = new AnswerMatcher("der Käse, die Milch / Sahne", 0);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("kase").verdict);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("Die Milch").verdict);
+        AnswerMatcher.Match match = matcher.check("sahne");
+        assertEquals(AnswerMatcher.Verdict.VARIANT, match.verdict);
+        assertEquals("Sahne", match.variant);
+        assertTrue(match.verdict.isAccepted());
+
+        matcher = new AnswerMatcher("(to) go", 0);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("go").verdict);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("to go").verdict);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("go!").verdict);
+
+        matcher = new AnswerMatcher("Straße", 0);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("strasse").verdict);
+    }
+
+    @Test
+    public void testArticles(){
+        //The article may be left out, another article is wrong
+        AnswerMatcher matcher = new AnswerMatcher("der Käse", AnswerMatcher.DEFAULTMAXDISTANCE);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("Käse").verdict);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("der kase").verdict);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("die Käse").verdict);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("das Käse").verdict);
+        assertEquals(AnswerMatcher.Verdict.NEARMISS, matcher.check("der Kse").verdict);
+
+        matcher = new AnswerMatcher("en hus", AnswerMatcher.DEFAULTMAXDISTANCE);
+        assertEquals(AnswerMatcher.Verdict.VARIANT, matcher.check("hus").verdict);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("ett hus").verdict);
+
+        //Articles differing by one letter are no near miss
+        matcher = new AnswerMatcher("le livre", AnswerMatcher.DEFAULTMAXDISTANCE);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("la livre").verdict);
+
+        //No article is added to a solution without one
+        matcher = new AnswerMatcher("Käse", 0);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("der Käse").verdict);
+    }
+
+    @Test
+    public void testNearMiss(){
+        AnswerMatcher matcher = new AnswerMatcher("Schmetterling, Falter", AnswerMatcher.DEFAULTMAXDISTANCE);
+        AnswerMatcher.Match match = matcher.check("Schmeterling");
+        assertEquals(AnswerMatcher.Verdict.NEARMISS, match.verdict);
+        assertEquals("Schmetterling", match.variant);
+        assertEquals(1, match.distance);
+        assertFalse(match.verdict.isAccepted());
+        assertEquals(AnswerMatcher.Verdict.NEARMISS, matcher.check("Fatler").verdict);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("Schmetterlingxx").verdict);
+
+        //Short words must be exact
+        matcher = new AnswerMatcher("bil", AnswerMatcher.DEFAULTMAXDISTANCE);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("bal").verdict);
+
+        matcher = new AnswerMatcher("Schmetterling", 0);
+        assertEquals(AnswerMatcher.Verdict.WRONG, matcher.check("Schmeterling").verdict);
+    }
+
+    @Test
+    public void testDistance(){
+        assertEquals(0, AnswerMatcher.getDistance("haus", "haus", 2));
+        assertEquals(1, AnswerMatcher.getDistance("haus", "hus", 2));
+        assertEquals(1, AnswerMatcher.getDistance("haus", "huas", 2));
+        assertEquals(2, AnswerMatcher.getDistance("haus", "hxxs", 2));
+        assertEquals(3, AnswerMatcher.getDistance("haus", "xxxx", 2));
+        assertEquals(3, AnswerMatcher.getDistance("haus", "h", 2));
+        assertEquals(1, AnswerMatcher.getDistance("", "a", 1));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the alias sampler and drawing cards from all boxes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BoxSamplerTest {
+
+    @Test
+    public void testAliasSampler(){
+        AliasSampler sampler = new AliasSampler(new double[]{1, 0, 3, 6});
+        Random random = new Random(11);
+        int[] counts = new int[4];
+        int runs = 100000;
+        for(int i=0; i<runs; i++){
+            counts[sampler.sample(random)]++;
+        }
+        assertEquals(0, counts[1]);
+        assertEquals(0.1, counts[0]/(double)runs, 0.01);
+        assertEquals(0.3, counts[2]/(double)runs, 0.01);
+        assertEquals(0.6, counts[3]/(double)runs, 0.01);
+
+        try{
+            new AliasSampler(new double[]{0, 0});
+            fail("No positive weight");
+        }
+        catch(IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void testBoxWeights(){
+        Dictionary dict = new Dictionary("test");
+        for(int i=0; i<100; i++){
+            Card card = new Card("wort"+i, "word"+i);
+            //90 cards in box 1, 10 in box 3
+            card.setBox(i < 90 ? 1 : 3);
+            dict.addCard(card);
+        }
+
+        BoxSampler sampler = dict.getBoxSampler(new double[]{1, 5, 1});
+        assertSame(sampler, dict.getBoxSampler(new double[]{1, 5, 1}));
+        Random random = new Random(3);
+        int inBox3 = 0;
+        for(int i=0; i<10000; i++){
+            if(sampler.draw(random).getBox() == 3){
+                inBox3++;
+            }
+        }
+        //Box 2 is empty, so box 1 and 3 are drawn equally often
+        assertEquals(0.5, inBox3/10000.0, 0.03);
+
+        sampler = dict.getBoxSampler(new double[]{0, 1, 0});
+        assertTrue(sampler.isEmpty());
+        assertNull(sampler.draw(random));
+
+        //Moved cards are found in their new box
+        dict.getCards().get(0).setBox(2);
+        sampler = dict.getBoxSampler(new double[]{1, 1, 0});
+        Card drawn = null;
+        for(int i=0; i<1000 && drawn == null; i++){
+            Card card = sampler.draw(random);
+            if(card.getBox() == 2){
+                drawn = card;
+            }
+        }
+        assertSame(dict.getCards().get(0), drawn);
+
+        dict.addCard(new Card("new", "neu"));
+        assertNotSame(sampler, dict.getBoxSampler(null));
+        assertArrayEquals(new double[]{5, 4, 3, 2, 1}, BoxSampler.getDefaultWeights(5), 0);
+    }
+}
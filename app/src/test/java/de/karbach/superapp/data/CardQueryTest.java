@@ -0,0 +1,123 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the card query language.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CardQueryTest {
+
+    private Dictionary createDictionary(){
+        Dictionary dict = new Dictionary("test");
+        Card haus = new Card("Haus", "hus (-et, -)");
+        haus.setType("Nomen");haus.setLesson("7");haus.setBox(3);
+        Card tag = new Card("Guten Tag", "god dag");
+        tag.setType("Phrase");tag.setLesson("1");tag.setBox(1);
+        Card auto = new Card("Auto", "bil (-en, -ar)");
+        auto.setType("Nomen");auto.setLesson("7");auto.setBox(5);
+        dict.addCard(haus);dict.addCard(tag);dict.addCard(auto);
+        return dict;
+    }
+
+    @Test
+    public void testFields(){
+        Dictionary dict = createDictionary();
+
+        List<Card> found = CardQuery.parse("box:>=3 lesson:7 type:nomen").filter(dict);
+        assertEquals(2, found.size());
+
+        found = CardQuery.parse("box:<5 lesson:7").filter(dict);
+        assertEquals(1, found.size());
+        assertEquals("Haus", found.get(0).getLang1());
+
+        found = CardQuery.parse("box:1 box:2").filter(dict);
+        assertEquals(0, found.size());
+        assertTrue(CardQuery.parse("box:1 box:2").isUnsatisfiable());
+    }
+
+    @Test
+    public void testTextRegexAndNegation(){
+        Dictionary dict = createDictionary();
+
+        List<Card> found = CardQuery.parse("\"guten tag\"").filter(dict);
+        assertEquals(1, found.size());
+
+        found = CardQuery.parse("lang2:/\\(-et/").filter(dict);
+        assertEquals(1, found.size());
+        assertEquals("Haus", found.get(0).getLang1());
+
+        found = CardQuery.parse("type:nomen -lang1:haus").filter(dict);
+        assertEquals(1, found.size());
+        assertEquals("Auto", found.get(0).getLang1());
+
+        found = CardQuery.parse("!box:1").filter(dict);
+        assertEquals(2, found.size());
+    }
+
+    @Test
+    public void testInvalidQueries(){
+        assertNull(CardQuery.parse("box:abc"));
+        assertNull(CardQuery.parse("/[a/"));
+        assertTrue(CardQuery.parse("").isEmpty());
+        assertTrue(CardQuery.parse(null).isEmpty());
+
+        Dictionary dict = createDictionary();
+        assertEquals(3, CardQuery.parse("").filter(dict).size());
+        assertEquals(0, CardQuery.parse("unknown:field").filter(dict).size());
+    }
+
+    @Test
+    public void testIsQuery(){
+        assertTrue(CardQuery.isQuery("box:>=3"));
+        assertTrue(CardQuery.isQuery("haus -lang2:hus"));
+        assertTrue(CardQuery.isQuery("\"guten tag\""));
+        assertTrue(CardQuery.isQuery("!/^el/"));
+
+        //Simple text keeps the simple search
+        assertFalse(CardQuery.isQuery("Lektion 7"));
+        assertFalse(CardQuery.isQuery("-en"));
+        assertFalse(CardQuery.isQuery("uhr: zeit"));
+        assertFalse(CardQuery.isQuery("und/oder"));
+        assertFalse(CardQuery.isQuery("- !"));
+        assertFalse(CardQuery.isQuery(""));
+        assertFalse(CardQuery.isQuery(null));
+    }
+
+    @Test
+    public void testRefinement(){
+        assertTrue(CardQuery.parse("type:noun haus").isRefinementOf(CardQuery.parse("type:noun")));
+        assertTrue(CardQuery.parse("lang1:haus").isRefinementOf(CardQuery.parse("lang1:ha")));
+        assertTrue(CardQuery.parse("box:3 lang2:hus").isRefinementOf(CardQuery.parse("box:3 lang2:h")));
+
+        //Exact matches for type and lesson and negations do not allow refinement
+        assertFalse(CardQuery.parse("haus").isRefinementOf(CardQuery.parse("ha")));
+        assertFalse(CardQuery.parse("-lang1:haus").isRefinementOf(CardQuery.parse("-lang1:ha")));
+        assertFalse(CardQuery.parse("box:30").isRefinementOf(CardQuery.parse("box:3")));
+        assertFalse(CardQuery.parse("haus").isRefinementOf(null));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for sorting cards with cached keys.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CardSortOrderTest {
+
+    private void assertOrder(List<Card> cards, String... lang1s){
+        assertEquals(lang1s.length, cards.size());
+        for(int i=0; i<lang1s.length; i++){
+            assertEquals(lang1s[i], cards.get(i).getLang1());
+        }
+    }
+
+    @Test
+    public void testSort(){
+        List<Card> cards = new ArrayList<Card>();
+        cards.add(new Card("Zebra", "zebra"));
+        cards.add(new Card("Äpfel", "äpplen"));
+        cards.add(new Card("", "tom"));
+        cards.add(new Card("Birne", "päron"));
+
+        CardSortOrder byLang1 = new CardSortOrder(true);
+        byLang1.sort(cards);
+        assertOrder(cards, "", "Äpfel", "Birne", "Zebra");
+
+        CardSortOrder byLang2 = new CardSortOrder(false);
+        byLang2.sort(cards);
+        assertOrder(cards, "Äpfel", "Birne", "", "Zebra");
+    }
+
+    @Test
+    public void testIncrementalUpdate(){
+        Card a = new Card("a", "1");
+        Card c = new Card("c", "2");
+        Card e = new Card("e", "3");
+        List<Card> sorted = new ArrayList<Card>();
+        sorted.add(e);sorted.add(a);sorted.add(c);
+
+        CardSortOrder order = new CardSortOrder(true);
+        order.sort(sorted);
+        assertOrder(sorted, "a", "c", "e");
+
+        Card d = new Card("d", "4");
+        List<Card> newCards = new ArrayList<Card>();
+        newCards.add(a);newCards.add(c);newCards.add(e);newCards.add(d);
+        order.update(sorted, newCards);
+        assertOrder(sorted, "a", "c", "d", "e");
+
+        //Edit a card and delete another one
+        a.setLang1("f");
+        newCards.remove(c);
+        order.update(sorted, newCards);
+        assertOrder(sorted, "d", "e", "f");
+    }
+}
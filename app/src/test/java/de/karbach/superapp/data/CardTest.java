@@ -88,6 +88,17 @@ public class CardTest {
         assertEquals(card.getLang1(), reimported2.getLang1());
         assertEquals(card.getLang2(), reimported2.getLang2());
         assertEquals(card.getBox(), reimported2.getBox());
+
+        card.setSchedule(1234567890123L, 6, 2, 236);
+        Card scheduled = Card.loadImported(card.export(), true);
+        assertEquals(1234567890123L, scheduled.getDue());
+        assertEquals(6, scheduled.getInterval());
+        assertEquals(2, scheduled.getRepetitions());
+        assertEquals(236, scheduled.getEaseFactor());
+
+        Card old = Card.loadImported("[\"danke\",\"thank you\",null,null,\"2\"]", true);
+        assertEquals(0, old.getDue());
+        assertEquals(Card.DEFAULTEASEFACTOR, old.getEaseFactor());
     }
 
     @Test
@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import de.karbach.superapp.R;
 import de.karbach.superapp.StarterActivity;
@@ -222,6 +223,47 @@ public class DictionaryTest {
         assertEquals(7, dict.getBoxcount());
     }
 
+    @Test
+    public void testExportAndImportScheduler(){
+        Dictionary dict = Dictionary.loadImported("Englisch;\nDeutsch;\nboxcount:5\n[\"ja\",\"yes\",null,null,\"1\"]", true);
+        assertEquals(Dictionary.SCHEDULERLEITNER, dict.getSchedulerName());
+        assertTrue(dict.getScheduler() instanceof LeitnerScheduler);
+        assertFalse(dict.export().contains("scheduler:"));
+
+        dict.setSchedulerName(Dictionary.SCHEDULERSM2);
+        assertTrue(dict.getScheduler() instanceof SM2Scheduler);
+        Dictionary imported = Dictionary.loadImported(dict.export(), true);
+        assertEquals(Dictionary.SCHEDULERSM2, imported.getSchedulerName());
+        assertEquals(1, imported.getCards().size());
+
+        imported.setSchedulerName("unknown");
+        assertEquals(Dictionary.SCHEDULERLEITNER, imported.getSchedulerName());
+    }
+
+    @Test
+    public void testExportAndImportSessionOrder(){
+        Dictionary dict = Dictionary.loadImported("Englisch;\nDeutsch;\nboxcount:5\n[\"ja\",\"yes\",null,null,\"1\"]", true);
+        assertEquals(SessionOrder.Strategy.RANDOM, dict.getSessionOrder());
+        assertFalse(dict.export().contains("order:"));
+
+        long version = dict.getVersion();
+        dict.setSessionOrder(SessionOrder.Strategy.HARDESTFIRST);
+        assertEquals(SessionOrder.Strategy.HARDESTFIRST, dict.getSessionOrder());
+        //The changed order is saved on pause
+        assertNotEquals(version, dict.getVersion());
+        version = dict.getVersion();
+        dict.setSessionOrder(SessionOrder.Strategy.HARDESTFIRST);
+        assertEquals(version, dict.getVersion());
+
+        Dictionary imported = Dictionary.loadImported(dict.export(), true);
+        assertEquals(SessionOrder.Strategy.HARDESTFIRST, imported.getSessionOrder());
+        assertEquals(Dictionary.SCHEDULERLEITNER, imported.getSchedulerName());
+
+        imported.setSessionOrder(null);
+        assertEquals(SessionOrder.Strategy.RANDOM, imported.getSessionOrder());
+        assertEquals(SessionOrder.Strategy.RANDOM, Dictionary.loadImported(imported.export(), true).getSessionOrder());
+    }
+
     @Test
     public void testSanitizeLanguages(){
         Dictionary dict = Dictionary.loadImported("Deutsch;\nDeutsch;\nboxcount:7\n[\"ja\",\"yes\",null,null,\"1\"]\n[\"nein\",\"no\",null,null,\"1\"]\n[\"danke\",\"thank you\",null,null,\"1\"]", true);
@@ -265,4 +307,77 @@ public class DictionaryTest {
         assertNotEquals("Abc", dict.getBaseLanguage());
         assertNotEquals("DEF", dict.getLanguage());
     }
+
+    @Test
+    public void testCardsByBoxAndVersion(){
+        Dictionary dict = new Dictionary("boxes");
+        dict.setBoxcount(3);
+        Card a = new Card("a", "a");
+        Card b = new Card("b", "b");
+        b.setBox(3);
+        Card c = new Card("c", "c");
+        c.setBox(7);
+        dict.addCard(a);dict.addCard(b);dict.addCard(c);
+
+        ArrayList<ArrayList<Card>> boxes = dict.getCardsByBox();
+        assertEquals(3, boxes.size());
+        assertEquals(1, boxes.get(0).size());
+        assertSame(a, boxes.get(0).get(0));
+        assertEquals(0, boxes.get(1).size());
+        assertEquals(dict.getCardsForBox(3), boxes.get(2));
+
+        long version = dict.getVersion();
+        assertEquals(version, dict.getVersion());
+        a.boxUp(null);
+        assertNotEquals(version, dict.getVersion());
+        version = dict.getVersion();
+        dict.deleteCard(c);
+        assertNotEquals(version, dict.getVersion());
+        version = dict.getVersion();
+        dict.setLanguage("Schwedisch");
+        assertNotEquals(version, dict.getVersion());
+        //Edits of cards change the version, edits of removed cards do not
+        version = dict.getVersion();
+        b.setLang2("bb");
+        assertNotEquals(version, dict.getVersion());
+        version = dict.getVersion();
+        c.setLang2("cc");
+        assertEquals(version, dict.getVersion());
+
+        //The version is stored with the dictionary
+        Dictionary loaded = Dictionary.loadImported(dict.export(), true);
+        assertEquals(dict.getVersion(), loaded.getVersion());
+        loaded.setBoxcount(4);
+        assertTrue(loaded.getVersion() > dict.getVersion());
+    }
+
+    @Test
+    public void testBoxTransitions(){
+        Dictionary dict = new Dictionary("notselected");
+        dict.setBoxcount(3);
+        Card a = new Card("a", "a");
+        Card b = new Card("b", "b");
+        dict.addCard(a);
+        dict.addCard(b);
+        assertTrue(dict.isDirty());
+
+        BoxSampler sampler = dict.getBoxSampler(new double[]{0, 1, 0});
+        assertTrue(sampler.isEmpty());
+
+        BoxTransitions transitions = new BoxTransitions(dict);
+        assertEquals(3, transitions.getMaxBox());
+        assertTrue(transitions.up(a));
+        assertEquals(2, a.getBox());
+        //The sampler knows the move immediately
+        assertFalse(sampler.isEmpty());
+        assertSame(a, sampler.draw(new Random(1)));
+
+        assertTrue(transitions.up(a));
+        assertFalse(transitions.up(a));
+        assertEquals(3, a.getBox());
+        assertFalse(transitions.down(b));
+        assertEquals(1, b.getBox());
+
+        assertEquals(Dictionary.DEFAULTBOXCOUNT, new BoxTransitions(null).getMaxBox());
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the distractors of multiple choice tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DistractorIndexTest {
+
+    @Test
+    public void testChoices(){
+        Dictionary dict = new Dictionary("test");
+        for(int i=0; i<1000; i++){
+            Card card = new Card("Wort"+i, "ord"+i);
+            card.setType(i%2 == 0 ? "Nomen" : "Verb");
+            card.setLesson(String.valueOf(i%10));
+            dict.addCard(card);
+        }
+        Card tested = dict.getCards().get(4);
+        DistractorIndex index = dict.getDistractorIndex(false);
+        assertSame(index, dict.getDistractorIndex(false));
+        assertNotSame(index, dict.getDistractorIndex(true));
+
+        Random random = new Random(1);
+        index = dict.getDistractorIndex(false);
+        for(int i=0; i<100; i++){
+            List<String> choices = index.getChoices(tested, 4, random);
+            assertEquals(4, choices.size());
+            assertEquals(4, new HashSet<String>(choices).size());
+            assertTrue(choices.contains("ord4"));
+        }
+
+        //Distractors prefer the buckets of the card
+        int similar = 0;
+        for(int i=0; i<100; i++){
+            for(String answer: index.getDistractors(tested, 3, random)){
+                int number = Integer.parseInt(answer.substring(3));
+                if(number%2 == 0 || number%10 == 4 || answer.length() == 4){
+                    similar++;
+                }
+            }
+        }
+        assertEquals(300, similar);
+
+        //Cards with other answers are found, even if they are in no common bucket
+        dict = new Dictionary("small");
+        dict.addCard(new Card("eins", "en"));
+        dict.addCard(new Card("ein", "en"));
+        dict.addCard(new Card("zwei", "två"));
+        index = dict.getDistractorIndex(false);
+        List<String> choices = index.getChoices(dict.getCards().get(0), 4, random);
+        assertEquals(2, choices.size());
+        assertTrue(choices.contains("två"));
+
+        //Editing a card with addCard rebuilds the index
+        dict.addCard(new Card("zwei", "tre"));
+        assertNotSame(index, dict.getDistractorIndex(false));
+        choices = dict.getDistractorIndex(false).getChoices(dict.getCards().get(0), 4, random);
+        assertTrue(choices.contains("tre"));
+        assertFalse(choices.contains("två"));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the incremental learning statistics.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LearningStatisticsTest {
+
+    @Test
+    public void testRecord(){
+        Dictionary dict = new Dictionary("test");
+        Card haus = new Card("Haus", "house");
+        haus.setLesson("1");
+        Card auto = new Card("Auto", "car");
+        auto.setLesson("2");
+        auto.setBox(2);
+        dict.addCard(haus);
+        dict.addCard(auto);
+
+        LearningStatistics stats = new LearningStatistics();
+        stats.sync(dict);
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0}, stats.getBoxCounts());
+        assertEquals(-1, stats.getSuccessRate(1), 0.0001);
+        assertEquals(-1, stats.getRetention(), 0.0001);
+
+        long day = ReviewScheduler.DAYMILLIS;
+        SessionResults results = new SessionResults(new BoxTransitions(dict));
+        results.record(haus, ReviewScheduler.GRADE_CORRECT, 10*day, 0);
+        results.record(auto, ReviewScheduler.GRADE_WRONG, 10*day+1000, 1);
+        stats.record(results.getResults());
+        results.commit(null);
+        stats.applied(dict);
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0}, stats.getBoxCounts());
+        assertEquals(1, stats.getSuccessRate(1), 0.0001);
+        assertEquals(0, stats.getSuccessRate(2), 0.0001);
+        assertEquals(1, stats.getSuccessRateForLesson("1"), 0.0001);
+        assertEquals(-1, stats.getSuccessRateForLesson("3"), 0.0001);
+        assertEquals(2, stats.getReviewCount(LearningStatistics.getDay(10*day)));
+
+        //Cards moved by the session are not counted again
+        stats.sync(dict);
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0}, stats.getBoxCounts());
+
+        //Reviews three days later count for the retention, the last review is taken from the schedule
+        assertEquals(10*day, haus.getLastReview());
+        results.record(haus, ReviewScheduler.GRADE_CORRECT, 13*day, 0);
+        results.record(auto, ReviewScheduler.GRADE_WRONG, 13*day, 1);
+        stats.record(results.getResults());
+        results.commit(null);
+        stats.applied(dict);
+        assertArrayEquals(new int[]{1, 0, 1, 0, 0}, stats.getBoxCounts());
+        assertEquals(0.5, stats.getRetention(1), 0.0001);
+        assertEquals(-1, stats.getRetention(0), 0.0001);
+        assertEquals(0.5, stats.getRetention(), 0.0001);
+        assertEquals(2, stats.getBoxCountsPerDay().size());
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0}, stats.getBoxCountsPerDay().get(LearningStatistics.getDay(10*day)));
+        assertEquals(2, stats.getReviewsPerDay().get(LearningStatistics.getDay(13*day))[LearningStatistics.REVIEWS]);
+
+        //Adding cards requires a new count
+        dict.addCard(new Card("Tag", "day"));
+        stats.sync(dict);
+        assertArrayEquals(new int[]{2, 0, 1, 0, 0}, stats.getBoxCounts());
+
+        //Boxes changed outside of a session are counted again
+        haus.setBox(5);
+        stats.sync(dict);
+        assertArrayEquals(new int[]{2, 0, 0, 0, 1}, stats.getBoxCounts());
+    }
+}
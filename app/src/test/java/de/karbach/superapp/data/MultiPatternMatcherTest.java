@@ -0,0 +1,82 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for matching many patterns at once.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MultiPatternMatcherTest {
+
+    @Test
+    public void testSameResultAsMatchesSearch(){
+        List<String> patterns = Arrays.asList("(-et", "(-t", "( -en", "(-n", "Nomen", "he", "she", "hers");
+        List<Card> cards = new ArrayList<Card>();
+        cards.add(new Card("Haus", "hus (-et, -)"));
+        cards.add(new Card("Auto", "bil ( -en, -ar)"));
+        cards.add(new Card("Tisch", "bord (-et, -)"));
+        cards.add(new Card("ushers", "x"));
+        cards.add(new Card("nichts", "ingenting"));
+        cards.add(new Card(null, null));
+        Card typed = new Card("Wort", "ord");
+        typed.setType("nomen");
+        cards.add(typed);
+
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        for(Card card: cards){
+            boolean expected = false;
+            for(String pattern: patterns){
+                if(card.matchesSearch(Card.toSimpleString(pattern))){
+                    expected = true;
+                }
+            }
+            assertEquals(expected, matcher.matches(card));
+        }
+        assertEquals(5, matcher.filter(cards).size());
+    }
+
+    @Test
+    public void testEmptyPatterns(){
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("", null, " "));
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches(new Card("a", "b")));
+        assertFalse(new MultiPatternMatcher(null).containsAny("abc"));
+    }
+
+    @Test
+    public void testOverlappingPatterns(){
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("abcd", "bce"));
+        assertTrue(matcher.containsAny("xabcex"));
+        assertFalse(matcher.containsAny("abcabd"));
+        assertTrue(matcher.containsAny("ababcd"));
+
+        MultiPatternMatcher umlauts = new MultiPatternMatcher(Arrays.asList("Ü"));
+        assertTrue(umlauts.containsAny(Card.toSimpleString("Tür")));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the binary review history.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReviewLogTest {
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        File file = File.createTempFile("reviews", ".log");
+        file.delete();
+        ReviewLog log = new ReviewLog(file);
+        assertEquals(0, log.size());
+        ReviewLog.Reader reader = log.openReader();
+        assertFalse(reader.next());
+        reader.close();
+
+        Card haus = new Card("Haus", "house");
+        Card auto = new Card("Auto", "car");
+        assertNotEquals(ReviewLog.getCardKey(haus), ReviewLog.getCardKey(auto));
+        assertEquals(ReviewLog.getCardKey(haus), ReviewLog.getCardKey(new Card("Haus", "building")));
+
+        SessionResults results = new SessionResults(new BoxTransitions(null));
+        results.record(haus, ReviewScheduler.GRADE_CORRECT, 1000, 0);
+        results.record(auto, ReviewScheduler.GRADE_WRONG, 2000, 1);
+        assertTrue(log.append(results.getResults()));
+        results.commit(null);
+        results.record(haus, ReviewScheduler.GRADE_CORRECT, 3000, 0);
+        assertTrue(log.append(results.getResults()));
+        assertEquals(3, log.size());
+        assertEquals(3*ReviewLog.RECORDSIZE, file.length());
+
+        reader = log.openReader();
+        assertTrue(reader.next());
+        assertEquals(0, reader.getIndex());
+        assertEquals(ReviewLog.getCardKey(haus), reader.getCardKey());
+        assertEquals(1000, reader.getTimestamp());
+        assertEquals(1, reader.getOldBox());
+        assertEquals(2, reader.getNewBox());
+        assertEquals(ReviewScheduler.GRADE_CORRECT, reader.getGrade());
+        assertTrue(reader.next());
+        assertEquals(ReviewLog.getCardKey(auto), reader.getCardKey());
+        assertEquals(1, reader.getNewBox());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getOldBox());
+        assertEquals(3, reader.getNewBox());
+        assertFalse(reader.next());
+        reader.close();
+
+        //Incomplete records are ignored and overwritten by the next append
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        assertEquals(3, log.size());
+        reader = log.openReader(2);
+        assertTrue(reader.next());
+        assertEquals(2, reader.getIndex());
+        assertEquals(3000, reader.getTimestamp());
+        assertFalse(reader.next());
+        reader.close();
+
+        results.commit(null);
+        results.record(auto, ReviewScheduler.GRADE_CORRECT, 4000, 1);
+        assertTrue(log.append(results.getResults()));
+        assertEquals(4*ReviewLog.RECORDSIZE, file.length());
+
+        log.delete();
+        assertFalse(file.exists());
+    }
+}
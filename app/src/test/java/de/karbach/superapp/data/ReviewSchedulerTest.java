@@ -0,0 +1,132 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the review schedulers and the due cards of a dictionary.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReviewSchedulerTest {
+
+    private static final long DAY = ReviewScheduler.DAYMILLIS;
+
+    @Test
+    public void testLeitner(){
+        LeitnerScheduler scheduler = new LeitnerScheduler(new int[]{1, 3, 10});
+        Card card = new Card("Haus", "house");
+        card.setBox(2);
+
+        scheduler.schedule(card, ReviewScheduler.GRADE_CORRECT, 1000);
+        assertEquals(3, card.getInterval());
+        assertEquals(1000+3*DAY, card.getDue());
+
+        card.setBox(7);
+        scheduler.schedule(card, ReviewScheduler.GRADE_CORRECT, 1000);
+        assertEquals(10, card.getInterval());
+
+        scheduler.schedule(card, ReviewScheduler.GRADE_WRONG, 5000);
+        assertEquals(0, card.getInterval());
+        assertEquals(5000, card.getDue());
+    }
+
+    @Test
+    public void testSM2(){
+        SM2Scheduler scheduler = new SM2Scheduler();
+        Card card = new Card("Haus", "house");
+
+        scheduler.schedule(card, 5, 0);
+        assertEquals(1, card.getInterval());
+        assertEquals(260, card.getEaseFactor());
+        scheduler.schedule(card, 4, 0);
+        assertEquals(6, card.getInterval());
+        assertEquals(260, card.getEaseFactor());
+        scheduler.schedule(card, 4, 0);
+        assertEquals(16, card.getInterval());
+        assertEquals(16*DAY, card.getDue());
+        assertEquals(3, card.getRepetitions());
+
+        scheduler.schedule(card, 0, 0);
+        assertEquals(1, card.getInterval());
+        assertEquals(0, card.getRepetitions());
+        assertEquals(180, card.getEaseFactor());
+
+        for(int i=0; i<5; i++){
+            scheduler.schedule(card, 0, 0);
+        }
+        assertEquals(SM2Scheduler.MINEASEFACTOR, card.getEaseFactor());
+    }
+
+    @Test
+    public void testDueCards(){
+        Dictionary dict = new Dictionary("test");
+        for(int i=0; i<50; i++){
+            Card card = new Card("word"+i, "wort"+i);
+            card.setSchedule((i*7)%50 * DAY, 1, 1, Card.DEFAULTEASEFACTOR);
+            dict.addCard(card);
+        }
+
+        assertEquals(11, dict.getDueCount(10*DAY));
+        List<Card> due = dict.getDueCards(5, 10*DAY);
+        assertEquals(5, due.size());
+        for(int i=0; i<5; i++){
+            assertEquals(i*DAY, due.get(i).getDue());
+        }
+        assertEquals(11, dict.getDueCards(100, 10*DAY).size());
+
+        //Moving a card updates the cached count
+        Card first = due.get(0);
+        dict.reviewCard(first, ReviewScheduler.GRADE_CORRECT, 20*DAY);
+        assertEquals(10, dict.getDueCount(10*DAY));
+        assertEquals(DAY, dict.getDueCards(1, 10*DAY).get(0).getDue());
+
+        dict.deleteCard(due.get(1));
+        assertEquals(9, dict.getDueCount(10*DAY));
+        Card added = new Card("new", "neu");
+        dict.addCard(added);
+        assertEquals(10, dict.getDueCount(10*DAY));
+        assertSame(added, dict.getDueCards(1, 0).get(0));
+
+        assertEquals(0, dict.getDueCards(3, -1).size());
+        assertEquals(50, dict.getDueCount(Long.MAX_VALUE));
+
+        //Cards added directly to the list are found, null entries are skipped
+        dict.getCards().add(null);
+        dict.getCards().add(new Card("direct", "direkt"));
+        assertEquals(51, dict.getDueCount(Long.MAX_VALUE));
+        assertEquals(51, dict.getDueCards(100, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testEndOfDay(){
+        long now = System.currentTimeMillis();
+        long end = Dictionary.getEndOfDay(now);
+        assertTrue(end >= now);
+        assertTrue(end - now < DAY+DAY/24);
+        assertEquals(end, Dictionary.getEndOfDay(end));
+        assertTrue(Dictionary.getEndOfDay(end+1) > end);
+    }
+}
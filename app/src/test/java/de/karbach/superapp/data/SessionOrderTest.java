@@ -0,0 +1,135 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the ordering of test sessions.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionOrderTest {
+
+    private List<Card> createCards(int count, int boxes){
+        List<Card> result = new ArrayList<Card>();
+        for(int i=0; i<count; i++){
+            Card card = new Card("wort"+i, "word"+i);
+            card.setBox(i%boxes+1);
+            result.add(card);
+        }
+        return result;
+    }
+
+    private void assertPermutation(List<Card> expected, List<Card> actual){
+        assertEquals(expected.size(), actual.size());
+        Map<Card, Boolean> contained = new IdentityHashMap<Card, Boolean>();
+        for(Card card: actual){
+            assertNull(contained.put(card, Boolean.TRUE));
+        }
+        for(Card card: expected){
+            assertTrue(contained.containsKey(card));
+        }
+    }
+
+    @Test
+    public void testReproducible(){
+        List<Card> cards = createCards(100, 5);
+        for(SessionOrder.Strategy strategy: SessionOrder.Strategy.values()) {
+            List<Card> first = new SessionOrder(42, strategy).order(cards);
+            List<Card> second = new SessionOrder(42, strategy).order(cards);
+            assertEquals(first, second);
+            assertPermutation(cards, first);
+        }
+        assertNotEquals(new SessionOrder(1, null).order(cards), new SessionOrder(2, null).order(cards));
+        assertEquals(0, new SessionOrder(1, SessionOrder.Strategy.HARDESTFIRST).order(new ArrayList<Card>()).size());
+    }
+
+    @Test
+    public void testUnbiasedShuffle(){
+        //Each of the 6 permutations of 3 elements should appear about equally often
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        Random random = new Random(7);
+        int runs = 60000;
+        for(int i=0; i<runs; i++){
+            List<Integer> list = new ArrayList<Integer>();
+            list.add(1);list.add(2);list.add(3);
+            SessionOrder.shuffle(list, random);
+            String key = list.toString();
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count+1);
+        }
+        assertEquals(6, counts.size());
+        for(Integer count: counts.values()){
+            assertTrue(Math.abs(count - runs/6) < runs/60);
+        }
+    }
+
+    @Test
+    public void testInterleaveAndHardestFirst(){
+        List<Card> cards = createCards(60, 3);
+
+        List<Card> interleaved = new SessionOrder(3, SessionOrder.Strategy.INTERLEAVEBOXES).order(cards);
+        //Each box has 20 cards spread evenly, so there are no long runs of one box
+        for(int i=0; i+5 < interleaved.size(); i++){
+            boolean allSame = true;
+            for(int j=1; j<6; j++){
+                allSame &= interleaved.get(i+j).getBox() == interleaved.get(i).getBox();
+            }
+            assertFalse(allSame);
+        }
+
+        cards.get(59).setSchedule(0, 0, 0, SM2Scheduler.MINEASEFACTOR);
+        List<Card> hardest = new SessionOrder(3, SessionOrder.Strategy.HARDESTFIRST).order(cards);
+        for(int i=1; i<hardest.size(); i++){
+            assertTrue(hardest.get(i-1).getBox() <= hardest.get(i).getBox());
+        }
+        //Card 59 is in box 3 after the 40 cards of box 1 and 2
+        assertSame(cards.get(59), hardest.get(40));
+    }
+
+    @Test
+    public void testSpreadSimilar(){
+        List<Card> cards = new ArrayList<Card>();
+        for(int i=0; i<10; i++){
+            cards.add(new Card("Haus"+i, "hus"+i));
+        }
+        for(int i=0; i<30; i++){
+            cards.add(new Card("x"+i, "w"+i+"ord"));
+        }
+        List<Card> spread = new SessionOrder(5, SessionOrder.Strategy.SPREADSIMILAR).order(cards);
+        int last = -100;
+        for(int i=0; i<spread.size(); i++){
+            if(spread.get(i).getLang2().startsWith("hus")){
+                assertTrue(i - last >= 2);
+                last = i;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for buffering and committing the answers of a test session.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionResultsTest {
+
+    @Test
+    public void testRecordUndoCommit(){
+        Dictionary dict = new Dictionary("test");
+        dict.setBoxcount(3);
+        Card a = new Card("a", "a");
+        Card b = new Card("b", "b");
+        dict.addCard(a);
+        dict.addCard(b);
+
+        SessionResults results = new SessionResults(new BoxTransitions(dict));
+        SessionResults.Result result = results.record(a, ReviewScheduler.GRADE_CORRECT, 1000, 0);
+        assertTrue(result.isUp());
+        assertEquals(1, a.getBox());
+        assertEquals(2, results.getPendingBox(a));
+
+        results.record(a, ReviewScheduler.GRADE_CORRECT, 2000, 0);
+        result = results.record(a, ReviewScheduler.GRADE_CORRECT, 3000, 0);
+        assertFalse(result.isUp());
+        assertEquals(3, results.getPendingBox(a));
+
+        result = results.record(b, ReviewScheduler.GRADE_WRONG, 4000, 1);
+        assertFalse(result.isDown());
+        assertEquals(1, result.newBox);
+
+        assertSame(result, results.undo());
+        assertEquals(3, results.size());
+        results.undo();
+        results.undo();
+        assertEquals(2, results.getPendingBox(a));
+        assertEquals(1, results.getPendingBox(b));
+
+        long version = dict.getVersion();
+        assertTrue(results.commit(null));
+        assertEquals(0, results.size());
+        assertNull(results.undo());
+        assertEquals(2, a.getBox());
+        assertEquals(1, b.getBox());
+        assertEquals(1000+LeitnerScheduler.DEFAULTINTERVALS[1]*ReviewScheduler.DAYMILLIS, a.getDue());
+        assertNotEquals(version, dict.getVersion());
+        assertTrue(dict.isDirty());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ VoBox - train your vocabulary
+ Copyright (C) 2015-2019  Carsten Karbach
+
+ Contact by mail carstenkarbach@gmx.de
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+ You should have received a copy of the GNU General Public License along
+ with this program; if not, write to the Free Software Foundation, Inc.,
+ 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package de.karbach.superapp.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the compact snapshot of a test session.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionSnapshotTest {
+
+    @Test
+    public void testSaveAndRestore() throws IOException {
+        Dictionary dict = new Dictionary("test");
+        List<Card> cards = new ArrayList<Card>();
+        List<Boolean> completed = new ArrayList<Boolean>();
+        for(int i=0; i<100; i++){
+            Card card = new Card("word"+i, "ord"+i);
+            dict.addCard(card);
+            cards.add(0, card);
+            completed.add(i%3 == 0);
+        }
+
+        SessionSnapshot snapshot = SessionSnapshot.create("test", 42, 70, cards, completed);
+        assertEquals(100, snapshot.size());
+        assertEquals(2, snapshot.getCompleted().length);
+        assertTrue(snapshot.isCompleted(99));
+        assertFalse(snapshot.isCompleted(98));
+        assertFalse(snapshot.isCompleted(1000));
+
+        File file = File.createTempFile("session", ".snapshot");
+        assertTrue(snapshot.save(file));
+        SessionSnapshot loaded = SessionSnapshot.load(file);
+        assertNotNull(loaded);
+        assertEquals("test", loaded.getDictionary());
+        assertEquals(42, loaded.getSeed());
+        assertEquals(70, loaded.getPosition());
+
+        List<Card> restoredCards = new ArrayList<Card>();
+        List<Boolean> restoredCompleted = new ArrayList<Boolean>();
+        assertEquals(70, loaded.restore(dict, restoredCards, restoredCompleted));
+        assertEquals(cards, restoredCards);
+        assertEquals(completed, restoredCompleted);
+
+        //Deleted cards are left out, the position moves with the current card
+        dict.deleteCard(cards.get(0));
+        dict.deleteCard(cards.get(99));
+        restoredCards.clear();
+        restoredCompleted.clear();
+        int position = loaded.restore(dict, restoredCards, restoredCompleted);
+        assertEquals(98, restoredCards.size());
+        assertSame(cards.get(70), restoredCards.get(position));
+        assertEquals(completed.get(70), restoredCompleted.get(position));
+
+        //Invalid files are ignored
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        assertNull(SessionSnapshot.load(file));
+        file.delete();
+        assertNull(SessionSnapshot.load(file));
+    }
+}